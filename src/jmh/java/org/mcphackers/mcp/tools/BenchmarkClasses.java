@@ -0,0 +1,106 @@
+package org.mcphackers.mcp.tools;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * Classes benchmarks run on. A game jar is used when the <code>retromcp.benchmark.jar</code> property points to one,
+ * otherwise classes are generated so benchmarks can run without any game files.
+ */
+public final class BenchmarkClasses {
+	public static final String JAR_PROPERTY = "retromcp.benchmark.jar";
+
+	private BenchmarkClasses() {
+	}
+
+	/**
+	 * @return jar given by {@link #JAR_PROPERTY} or <code>null</code>
+	 */
+	public static Path getJar() {
+		String jar = System.getProperty(JAR_PROPERTY);
+		return jar == null || jar.isEmpty() ? null : Paths.get(jar);
+	}
+
+	/**
+	 * @return jar given by {@link #JAR_PROPERTY}, or the ASM jar from the classpath
+	 */
+	public static Path getJarOrLibrary() {
+		Path jar = getJar();
+		if (jar != null) {
+			return jar;
+		}
+		try {
+			return Paths.get(ClassReader.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+		} catch (URISyntaxException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @return every class of the jar given by {@link #JAR_PROPERTY}, or generated classes calling OpenGL and keyboard methods
+	 */
+	public static List<byte[]> getClasses(int generated) throws IOException {
+		Path jar = getJar();
+		return jar == null ? generateGLClasses(generated) : readClasses(jar);
+	}
+
+	public static List<byte[]> readClasses(Path jar) throws IOException {
+		List<byte[]> classes = new ArrayList<>();
+		try (ZipIndex zip = new ZipIndex(jar)) {
+			for (String name : zip.getNames()) {
+				if (name.endsWith(".class")) {
+					classes.add(zip.getBytes(name));
+				}
+			}
+		}
+		return classes;
+	}
+
+	/**
+	 * Generates classes shaped like obfuscated render code: methods passing integer constants to OpenGL and keyboard methods
+	 * between unrelated arithmetic
+	 */
+	public static List<byte[]> generateGLClasses(int count) {
+		List<byte[]> classes = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+			writer.visit(Opcodes.V1_6, Opcodes.ACC_PUBLIC, "bench/C" + i, null, "java/lang/Object", null);
+			for (int j = 0; j < 10; j++) {
+				MethodVisitor mv = writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "m" + j, "(I)I", null, null);
+				mv.visitCode();
+				mv.visitLdcInsn(16640);
+				mv.visitMethodInsn(Opcodes.INVOKESTATIC, "org/lwjgl/opengl/GL11", "glClear", "(I)V", false);
+				mv.visitLdcInsn(3553);
+				mv.visitMethodInsn(Opcodes.INVOKESTATIC, "org/lwjgl/opengl/GL11", "glEnable", "(I)V", false);
+				mv.visitIntInsn(Opcodes.SIPUSH, 770);
+				mv.visitIntInsn(Opcodes.SIPUSH, 771);
+				mv.visitMethodInsn(Opcodes.INVOKESTATIC, "org/lwjgl/opengl/GL11", "glBlendFunc", "(II)V", false);
+				for (int k = 0; k < 20; k++) {
+					mv.visitVarInsn(Opcodes.ILOAD, 0);
+					mv.visitIntInsn(Opcodes.BIPUSH, k);
+					mv.visitInsn(Opcodes.IADD);
+					mv.visitVarInsn(Opcodes.ISTORE, 0);
+				}
+				mv.visitIntInsn(Opcodes.BIPUSH, 57);
+				mv.visitMethodInsn(Opcodes.INVOKESTATIC, "org/lwjgl/input/Keyboard", "isKeyDown", "(I)Z", false);
+				mv.visitInsn(Opcodes.POP);
+				mv.visitVarInsn(Opcodes.ILOAD, 0);
+				mv.visitInsn(Opcodes.IRETURN);
+				mv.visitMaxs(0, 0);
+				mv.visitEnd();
+			}
+			writer.visitEnd();
+			classes.add(writer.toByteArray());
+		}
+		return classes;
+	}
+}
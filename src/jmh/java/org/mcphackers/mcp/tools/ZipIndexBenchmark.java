@@ -0,0 +1,110 @@
+package org.mcphackers.mcp.tools;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Opening a jar and reading all of its entries through {@link ZipIndex} and through {@link ZipFile}.
+ * Reads the jar given by <code>retromcp.benchmark.jar</code>, or the ASM jar from the classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ZipIndexBenchmark {
+	private Path jar;
+
+	@Setup
+	public void setup() {
+		jar = BenchmarkClasses.getJarOrLibrary();
+	}
+
+	@Benchmark
+	public void openZipIndex(Blackhole blackhole) throws IOException {
+		try (ZipIndex zip = new ZipIndex(jar)) {
+			blackhole.consume(zip.getNames());
+		}
+	}
+
+	@Benchmark
+	public void openZipFile(Blackhole blackhole) throws IOException {
+		try (ZipFile zip = new ZipFile(jar.toFile())) {
+			Enumeration<? extends ZipEntry> entries = zip.entries();
+			while (entries.hasMoreElements()) {
+				blackhole.consume(entries.nextElement());
+			}
+		}
+	}
+
+	@Benchmark
+	public void readZipIndex(Blackhole blackhole) throws IOException {
+		try (ZipIndex zip = new ZipIndex(jar)) {
+			for (String name : zip.getNames()) {
+				blackhole.consume(zip.getBytes(name));
+			}
+		}
+	}
+
+	@Benchmark
+	public void readZipFile(Blackhole blackhole) throws IOException {
+		try (ZipFile zip = new ZipFile(jar.toFile())) {
+			Enumeration<? extends ZipEntry> entries = zip.entries();
+			while (entries.hasMoreElements()) {
+				try (InputStream in = zip.getInputStream(entries.nextElement())) {
+					blackhole.consume(Util.readAllBytes(in));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Entries read by several threads at once, as jars are read while decompiling
+	 */
+	@Benchmark
+	public void readZipIndexParallel(Blackhole blackhole) throws IOException {
+		try (ZipIndex zip = new ZipIndex(jar)) {
+			List<String> names = zip.getNames();
+			names.parallelStream().forEach(name -> {
+				try {
+					blackhole.consume(zip.getBytes(name));
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		}
+	}
+
+	@Benchmark
+	public void readZipFileParallel(Blackhole blackhole) throws IOException {
+		try (ZipFile zip = new ZipFile(jar.toFile())) {
+			zip.stream().parallel().forEach(entry -> {
+				try (InputStream in = zip.getInputStream(entry)) {
+					blackhole.consume(Util.readAllBytes(in));
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package org.mcphackers.mcp.tools.injector;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.mcphackers.mcp.tools.BenchmarkClasses;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.tree.ClassNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The GLConstants matchers run in one fused traversal against one traversal per matcher, as separate visitors did.
+ * Both read the classes again on every invocation, {@link #readClasses} measures that part alone.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FusedInsnVisitorBenchmark {
+	private List<byte[]> classes;
+	private FusedInsnVisitor fused;
+	private FusedInsnVisitor[] separate;
+
+	@Setup
+	public void setup() throws IOException {
+		classes = BenchmarkClasses.getClasses(500);
+		fused = new FusedInsnVisitor()
+				.add(new GLConstants.KeyboardMatcher())
+				.add(new GLConstants.GLCallMatcher());
+		separate = new FusedInsnVisitor[]{
+				new FusedInsnVisitor().add(new GLConstants.KeyboardMatcher()),
+				new FusedInsnVisitor().add(new GLConstants.GLCallMatcher())
+		};
+	}
+
+	private ClassNode read(byte[] bytes) {
+		ClassNode node = new ClassNode();
+		new ClassReader(bytes).accept(node, 0);
+		return node;
+	}
+
+	@Benchmark
+	public void readClasses(Blackhole blackhole) {
+		for (byte[] bytes : classes) {
+			blackhole.consume(read(bytes));
+		}
+	}
+
+	@Benchmark
+	public void fused(Blackhole blackhole) {
+		for (byte[] bytes : classes) {
+			ClassNode node = read(bytes);
+			fused.visitClass(node);
+			blackhole.consume(node);
+		}
+	}
+
+	@Benchmark
+	public void separate(Blackhole blackhole) {
+		for (byte[] bytes : classes) {
+			ClassNode node = read(bytes);
+			for (FusedInsnVisitor visitor : separate) {
+				visitor.visitClass(node);
+			}
+			blackhole.consume(node);
+		}
+	}
+}
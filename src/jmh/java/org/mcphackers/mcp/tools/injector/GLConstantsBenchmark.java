@@ -0,0 +1,128 @@
+package org.mcphackers.mcp.tools.injector;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.mcphackers.mcp.tools.BenchmarkClasses;
+import org.mcphackers.mcp.tools.Util;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Loading the constant tables, looking constants up and replacing constants in classes.
+ * {@link #readClasses} is the baseline for {@link #replaceConstants}, which reads the same classes before visiting them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GLConstantsBenchmark {
+	private static final MethodInsnNode[] CALLS = {
+			new MethodInsnNode(Opcodes.INVOKESTATIC, "org/lwjgl/opengl/GL11", "glClear", "(I)V"),
+			new MethodInsnNode(Opcodes.INVOKESTATIC, "org/lwjgl/opengl/GL11", "glEnable", "(I)V"),
+			new MethodInsnNode(Opcodes.INVOKESTATIC, "org/lwjgl/opengl/GL11", "glBlendFunc", "(II)V"),
+			new MethodInsnNode(Opcodes.INVOKESTATIC, "org/lwjgl/opengl/GL11", "glVertex3f", "(FFF)V")
+	};
+	private static final int[] VALUES = {16640, 3553, 770, 771, 2929, 12345};
+
+	private List<byte[]> classes;
+
+	@Setup
+	public void setup() throws IOException {
+		classes = BenchmarkClasses.getClasses(500);
+	}
+
+	@Benchmark
+	public void lookup(Blackhole blackhole) {
+		for (MethodInsnNode call : CALLS) {
+			for (int value : VALUES) {
+				blackhole.consume(GLConstants.getGLInsn(call, value));
+			}
+		}
+		blackhole.consume(GLConstants.getKeyboardInsn(57));
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public void readClasses(Blackhole blackhole) {
+		for (byte[] bytes : classes) {
+			ClassNode node = new ClassNode();
+			new ClassReader(bytes).accept(node, 0);
+			blackhole.consume(node);
+		}
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public void replaceConstants(Blackhole blackhole) {
+		GLConstants constants = new GLConstants(null);
+		for (byte[] bytes : classes) {
+			ClassNode node = new ClassNode();
+			new ClassReader(bytes).accept(node, 0);
+			constants.visitClass(node);
+			blackhole.consume(node);
+		}
+	}
+
+	/**
+	 * Initializes GLConstants in a new class loader each time, which reads the tables from gl_constants.bin
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	@Warmup(iterations = 10)
+	@Measurement(iterations = 50)
+	public Class<?> loadTables() throws ClassNotFoundException {
+		return Class.forName(GLConstants.class.getName(), true, new InjectorClassLoader());
+	}
+
+	/**
+	 * Defines classes of the injector package again and delegates everything else
+	 */
+	private static final class InjectorClassLoader extends ClassLoader {
+		private static final String PACKAGE = GLConstants.class.getPackage().getName() + '.';
+
+		private InjectorClassLoader() {
+			super(GLConstantsBenchmark.class.getClassLoader());
+		}
+
+		@Override
+		protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+			if (!name.startsWith(PACKAGE)) {
+				return super.loadClass(name, resolve);
+			}
+			synchronized (getClassLoadingLock(name)) {
+				Class<?> loaded = findLoadedClass(name);
+				if (loaded != null) {
+					return loaded;
+				}
+				try (InputStream in = getParent().getResourceAsStream(name.replace('.', '/') + ".class")) {
+					if (in == null) {
+						throw new ClassNotFoundException(name);
+					}
+					byte[] bytes = Util.readAllBytes(in);
+					return defineClass(name, bytes, 0, bytes.length);
+				} catch (IOException e) {
+					throw new ClassNotFoundException(name, e);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package org.mcphackers.mcp.tools.injector;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.mcphackers.mcp.tools.BenchmarkClasses;
+import org.mcphackers.mcp.tools.NamePool;
+import org.mcphackers.mcp.tools.ZipIndex;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.tree.ClassNode;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Heap retained by the class nodes of a jar, read with plain class readers and with {@link JarClassReader} and a {@link NamePool}.
+ * Each invocation reads the whole jar once, the retained heap is reported as the <code>retainedBytes</code> counter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class JarClassReaderBenchmark {
+	private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+	private Path jar;
+
+	/**
+	 * Used heap after collecting garbage before and after the jar was read
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Heap {
+		public long retainedBytes;
+		private long before;
+		/**
+		 * Nodes of the last invocation, held until the heap was measured
+		 */
+		private Object retained;
+
+		@Setup(Level.Invocation)
+		public void setup() {
+			retained = null;
+			retainedBytes = 0;
+			before = usedHeap();
+		}
+
+		private void measure(Object nodes) {
+			retained = nodes;
+			retainedBytes = usedHeap() - before;
+		}
+	}
+
+	@Setup
+	public void setup() {
+		jar = BenchmarkClasses.getJarOrLibrary();
+	}
+
+	private static long usedHeap() {
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return MEMORY.getHeapMemoryUsage().getUsed();
+	}
+
+	@Benchmark
+	public List<ClassNode> plainClassReader(Heap heap) throws IOException {
+		List<ClassNode> nodes = new ArrayList<>();
+		try (ZipIndex zip = new ZipIndex(jar)) {
+			for (String name : zip.getNames()) {
+				if (name.endsWith(".class")) {
+					ClassNode node = new ClassNode();
+					new ClassReader(zip.getBytes(name)).accept(node, 0);
+					nodes.add(node);
+				}
+			}
+		}
+		heap.measure(nodes);
+		return nodes;
+	}
+
+	@Benchmark
+	public List<ClassNode> pooledJarClassReader(Heap heap) throws IOException {
+		List<ClassNode> nodes = JarClassReader.readJar(jar, new NamePool());
+		heap.measure(nodes);
+		return nodes;
+	}
+}
@@ -12,6 +12,7 @@ public class MCPPaths {
 	public static final String CONF = "conf/";
 	public static final String BUILD = "build/";
 	public static final String PROJECT = "minecraft_%s/";
+	public static final String CACHE = "cache/";
 
 	//Files and subdirectories
 	public static final String JAR_ORIGINAL = JARS + "minecraft_%s.jar";
@@ -29,8 +30,10 @@ public class MCPPaths {
 	public static final String MD5_RO = PROJECT + "md5/modified.md5";
 	public static final String JARS_DIR = PROJECT + "jars";
 	public static final String REMAPPED = PROJECT + "jars/deobfuscated.jar";
+	public static final String REMAPPED_INPUTS = PROJECT + "jars/deobfuscated.inputs";
 	public static final String REOBF_JAR = PROJECT + "jars/reobfuscated.jar";
 	public static final String SOURCE_JAR = PROJECT + "jars/deobfuscated-source.jar";
+	public static final String DECOMPILE_PROFILE = PROJECT + "decompile-profile.json";
 	public static final String REOBF_SIDE = PROJECT + "reobf";
 	public static final String GAMEDIR = PROJECT + "game/";
 
@@ -41,6 +44,10 @@ public class MCPPaths {
 	public static final String PATCHES = "patches/%s.patch";
 	public static final String VERSION = CONF + "version.json";
 	public static final String HMOD = CONF + "hmod.json";
+	public static final String DECOMPILE_CACHE = CACHE + "decompile_%s.zip";
+	public static final String LIBRARY_INDEX = CACHE + "libraries.idx";
+	public static final String JAVADOC_INDEX = CACHE + "javadocs.idx";
+	public static final String CONF_INDEX = CACHE + "conf_%s.idx";
 	public static final String DEFAULTHMOD = CONF + "HMOD/";
 
 	public static final String UPDATE_JAR = "update.jar";
@@ -57,6 +57,7 @@ public class TaskCleanup extends TaskStaged {
 		}
 		filesToDelete.add(MCPPaths.get(mcp, CONF));
 		filesToDelete.add(MCPPaths.get(mcp, NATIVES));
+		filesToDelete.add(MCPPaths.get(mcp, CACHE));
 
 		Path[] foldersToDelete = new Path[]{
 				MCPPaths.get(mcp, JARS),
@@ -3,25 +3,43 @@ package org.mcphackers.mcp.tasks;
 import static org.mcphackers.mcp.MCPPaths.*;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import org.mcphackers.mcp.MCP;
 import org.mcphackers.mcp.MCPPaths;
 import org.mcphackers.mcp.tasks.mode.TaskParameter;
 import org.mcphackers.mcp.tools.ClassUtils;
 import org.mcphackers.mcp.tools.FileUtil;
+import org.mcphackers.mcp.tools.JarDelta;
+import org.mcphackers.mcp.tools.NamePool;
+import org.mcphackers.mcp.tools.Util;
+import org.mcphackers.mcp.tools.ZipIndex;
 import org.mcphackers.mcp.tools.fernflower.Decompiler;
+import org.mcphackers.mcp.tools.injector.ConfIndex;
 import org.mcphackers.mcp.tools.injector.GLConstants;
+import org.mcphackers.mcp.tools.injector.JarClassReader;
+import org.mcphackers.mcp.tools.injector.RemappedJar;
+import org.mcphackers.mcp.tools.injector.TransformPipeline;
 import org.mcphackers.mcp.tools.mappings.MappingUtil;
 import org.mcphackers.mcp.tools.project.EclipseProjectWriter;
 import org.mcphackers.mcp.tools.project.IdeaProjectWriter;
 import org.mcphackers.mcp.tools.project.VSCProjectWriter;
-import org.mcphackers.mcp.tools.source.Source;
+import org.mcphackers.mcp.tools.source.Patch;
+import org.mcphackers.mcp.tools.source.SourcePipeline;
 import org.mcphackers.rdi.injector.data.ClassStorage;
 import org.mcphackers.rdi.injector.data.Mappings;
 import org.mcphackers.rdi.injector.transform.Transform;
-import org.mcphackers.rdi.nio.IOUtil;
 import org.mcphackers.rdi.nio.MappingsIO;
 import org.mcphackers.rdi.nio.RDInjector;
 import org.objectweb.asm.tree.ClassNode;
@@ -31,6 +49,12 @@ public class TaskDecompile extends TaskStaged {
 	public static final int STAGE_MD5 = 5;
 
 	private int classVersion = -1;
+	private CompletableFuture<Void> remappedWriter;
+	private RemappedJar remapped;
+	private List<String> patchFailures = Collections.emptyList();
+	private List<String> slowestClasses = Collections.emptyList();
+	private Mappings mappings;
+	private String remapInputs;
 
 	public TaskDecompile(Side side, MCP instance) {
 		super(side, instance);
@@ -53,6 +77,11 @@ public class TaskDecompile extends TaskStaged {
 		}
 		boolean joined = MappingUtil.readNamespaces(mappingsPath).contains("official");
 		Mappings mappings = MappingsIO.read(mappingsPath, joined ? "official" : getSideName(side), "named");
+		addDefaultMappings(mappings, storage, side);
+		return mappings;
+	}
+
+	private static void addDefaultMappings(Mappings mappings, ClassStorage storage, Side side) {
 		for (String name : storage.getAllClasses()) {
 			if (name.indexOf('/') == -1 && !mappings.classes.containsKey(name)) {
 				if(side != Side.HMOD) {
@@ -62,7 +91,25 @@ public class TaskDecompile extends TaskStaged {
 				}
 			}
 		}
-		return mappings;
+	}
+
+	private static ClassStorage readStorage(Path jar, NamePool names) {
+		try {
+			return new ClassStorage(JarClassReader.readJar(jar, names));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static <T> T join(CompletableFuture<T> future) throws IOException {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof UncheckedIOException) {
+				throw ((UncheckedIOException) e.getCause()).getCause();
+			}
+			throw e;
+		}
 	}
 
 	@Override
@@ -71,88 +118,377 @@ public class TaskDecompile extends TaskStaged {
 		final Path ffOut = MCPPaths.get(mcp, SOURCE_UNPATCHED, side);
 		final Path srcPath = MCPPaths.get(mcp, SOURCE, side);
 		final Path patchesPath = MCPPaths.get(mcp, CONF_PATCHES, side);
+		final String[] requestedClasses = mcp.getOptions().getStringArrayParameter(TaskParameter.DECOMPILE_CLASSES);
+		if (requestedClasses != null && requestedClasses.length > 0) {
+			return setLazyStages(requestedClasses, rdiOut, ffOut, patchesPath);
+		}
 
 		return new Stage[]{stage(getLocalizedStage("prepare"), 0, () -> {
+			remapInputs = getRemapInputs();
+			Path kept = null;
+			if (isRemappedCurrent(rdiOut, remapInputs)) {
+				// Remapped jar only depends on the inputs, keep it across the clean
+				Path cacheDir = MCPPaths.get(mcp, CACHE);
+				Files.createDirectories(cacheDir);
+				kept = Files.createTempFile(cacheDir, "deobfuscated", ".jar");
+				Files.move(rdiOut, kept, StandardCopyOption.REPLACE_EXISTING);
+			}
 			FileUtil.cleanDirectory(MCPPaths.get(mcp, PROJECT, side));
 			FileUtil.createDirectories(MCPPaths.get(mcp, JARS_DIR, side));
 			FileUtil.createDirectories(MCPPaths.get(mcp, MD5_DIR, side));
 			Files.createDirectories(MCPPaths.get(mcp, GAMEDIR, side));
+			if (kept != null) {
+				Files.move(kept, rdiOut);
+				writeRemapInputs(remapInputs);
+			}
 		}), stage(getLocalizedStage("rdi"), 2, () -> {
-			ClassStorage storage = applyInjector();
-			for (ClassNode node : storage) {
-				classVersion = Math.max(classVersion, node.version);
+			if (isRemappedCurrent(rdiOut, remapInputs)) {
+				log("Remapped jar is up to date, skipping remapping");
+				// Decompiler reads classes from the remapped jar
+				classVersion = getClassVersion(rdiOut);
+			} else {
+				RDInjector injector = setupInjector();
+				for (ClassNode node : injector.getStorage()) {
+					classVersion = Math.max(classVersion, node.version);
+				}
+				writeRemapped(injector, rdiOut, remapInputs);
 			}
 			// Force Java 8 or later in order to support VSC
 			// Java extension does not allow compiling under Java 8
 			classVersion = Math.max(52, classVersion);
 		}), stage(getLocalizedStage("decompile"), 0, () -> {
-			new Decompiler(this, rdiOut, ffOut, mcp.getLibraries(), mcp).decompile();
+			Decompiler decompiler = createDecompiler(rdiOut, ffOut);
+			setHModBaseCache(decompiler);
+			if (remapped != null) {
+				decompiler.setClasses(remapped);
+			}
+			boolean outputSrc = mcp.getOptions().getBooleanParameter(TaskParameter.OUTPUT_SRC);
+			Patch patch = getPatch(patchesPath);
+			// Patches, source adapters and copying to src are applied to each file as it's decompiled
+			// Ignored packages are only used as context and resources are never written unless requested
+			decompiler.setFilter(mcp.getOptions().getStringArrayParameter(TaskParameter.IGNORED_PACKAGES), mcp.getOptions().getBooleanParameter(TaskParameter.DECOMPILE_RESOURCES));
+			try (SourcePipeline pipeline = new SourcePipeline(ffOut, MCPPaths.get(mcp, SOURCE_JAR, side), outputSrc ? srcPath : null, patch, MCP.SOURCE_ADAPTERS)) {
+				decompiler.setSaver(pipeline);
+				decompiler.decompile();
+				patchFailures = pipeline.getPatchFailures();
+			}
+			for (String warning : decompiler.getWarnings()) {
+				addMessage(warning, Task.WARNING);
+			}
+			int[] cacheStats = decompiler.getCacheStats();
+			log("Restored " + cacheStats[0] + " classes from the decompile cache, decompiled " + cacheStats[1] + " classes");
+			decompiler.writeProfile(MCPPaths.get(mcp, DECOMPILE_PROFILE, side));
+			slowestClasses = decompiler.log.getProfile().getSlowest(20);
+			mappings = null;
 			new EclipseProjectWriter().createProject(mcp, side, ClassUtils.getSourceFromClassVersion(classVersion));
 			new IdeaProjectWriter().createProject(mcp, side, ClassUtils.getSourceFromClassVersion(classVersion));
 			new VSCProjectWriter().createProject(mcp, side, ClassUtils.getSourceFromClassVersion(classVersion));
 		}), stage(getLocalizedStage("patch"), 88, () -> {
-			if (mcp.getOptions().getBooleanParameter(TaskParameter.PATCHES) && Files.exists(patchesPath)) {
-				TaskApplyPatch.patch(this, ffOut, ffOut, patchesPath);
+			if (!patchFailures.isEmpty()) {
+				addMessage(String.join(System.lineSeparator(), patchFailures), Task.INFO);
+				addMessage("Patching failed!", Task.ERROR);
 			}
-
-			Source.modify(ffOut, MCP.SOURCE_ADAPTERS);
 		}), stage(getLocalizedStage("copysrc"), 90, () -> {
-			if (!mcp.getOptions().getBooleanParameter(TaskParameter.DECOMPILE_RESOURCES)) {
-				for (Path p : FileUtil.walkDirectory(ffOut, p -> !Files.isDirectory(p) && !p.getFileName().toString().endsWith(".java"))) {
-					Files.delete(p);
+			Files.createDirectories(srcPath);
+		}), stage(getLocalizedStage("recompile"), 95, () -> {
+			awaitRemapped();
+			new TaskUpdateMD5(side, mcp, this).doTask();
+		}),};
+	}
+
+	/**
+	 * Stages for decompiling only requested classes. The workspace is kept and classes are read from the remapped jar of the last decompile.
+	 * Decompiled sources are written to the original source directory and stored in the decompile cache.
+	 */
+	private Stage[] setLazyStages(String[] requestedClasses, Path rdiOut, Path ffOut, Path patchesPath) {
+		return new Stage[]{stage(getLocalizedStage("prepare"), 0, () -> {
+			FileUtil.createDirectories(MCPPaths.get(mcp, JARS_DIR, side));
+		}), stage(getLocalizedStage("rdi"), 2, () -> {
+			String inputs = getRemapInputs();
+			if (!isRemappedCurrent(rdiOut, inputs)) {
+				writeRemapped(setupInjector(), rdiOut, inputs);
+			}
+		}), stage(getLocalizedStage("decompile"), 3, () -> {
+			Decompiler decompiler = createDecompiler(rdiOut, ffOut);
+			if (remapped != null) {
+				decompiler.setClasses(remapped);
+			}
+			decompiler.setRequestedClasses(requestedClasses);
+			// Same patch as a full decompile, so that requested classes match their sources from it
+			Patch patch = getPatch(patchesPath);
+			List<String> failures;
+			try (SourcePipeline pipeline = new SourcePipeline(ffOut, null, null, patch, MCP.SOURCE_ADAPTERS)) {
+				pipeline.setPartial(true);
+				decompiler.setSaver(pipeline);
+				decompiler.decompile();
+				failures = pipeline.getPatchFailures();
+			}
+			for (String warning : decompiler.getWarnings()) {
+				addMessage(warning, Task.WARNING);
+			}
+			if (!failures.isEmpty()) {
+				addMessage(String.join(System.lineSeparator(), failures), Task.INFO);
+				addMessage("Patching failed!", Task.ERROR);
+			}
+		})};
+	}
+
+	private Decompiler createDecompiler(Path rdiOut, Path ffOut) {
+		Path cache = mcp.getOptions().getBooleanParameter(TaskParameter.DECOMPILE_CACHE) ? MCPPaths.get(mcp, DECOMPILE_CACHE, side) : null;
+		Decompiler decompiler = new Decompiler(this, rdiOut, ffOut, mcp.getLibraries(), mcp, cache);
+		if (mcp.getOptions().getIntParameter(TaskParameter.DECOMPILE_WORKERS) <= 0 && mcp.getOptions().getIntParameter(TaskParameter.DECOMPILE_TIMEOUT) > 0) {
+			log("Decompiling in this process, the time budget and its fallback only apply when decompiling in worker processes");
+		}
+		if (cache != null) {
+			// Merged and single side workspaces decompile many identical classes
+			List<Path> sharedCaches = new ArrayList<>();
+			for (Side otherSide : Side.ALL) {
+				if (otherSide != side) {
+					sharedCaches.add(MCPPaths.get(mcp, DECOMPILE_CACHE, otherSide));
 				}
 			}
-			Files.createDirectories(srcPath);
-			FileUtil.compress(ffOut, MCPPaths.get(mcp, SOURCE_JAR, side));
-			if (mcp.getOptions().getBooleanParameter(TaskParameter.OUTPUT_SRC)) {
-				FileUtil.deletePackages(ffOut, mcp.getOptions().getStringArrayParameter(TaskParameter.IGNORED_PACKAGES));
-				FileUtil.copyDirectory(ffOut, srcPath);
+			decompiler.setSharedCaches(sharedCaches);
+		}
+		return decompiler;
+	}
+
+	@Override
+	public void doTask() throws Exception {
+		try {
+			super.doTask();
+		} finally {
+			try {
+				awaitRemapped();
+			} finally {
+				if (remapped != null) {
+					remapped.close();
+					remapped = null;
+				}
 			}
-		}), stage(getLocalizedStage("recompile"), 95, () -> new TaskUpdateMD5(side, mcp, this).doTask()),};
+		}
+		if (!slowestClasses.isEmpty()) {
+			log("Slowest classes to decompile:");
+			for (String line : slowestClasses) {
+				log(line);
+			}
+		}
+	}
+
+	private void awaitRemapped() throws IOException {
+		if (remappedWriter == null) {
+			return;
+		}
+		try {
+			join(remappedWriter);
+		} finally {
+			remappedWriter = null;
+		}
 	}
 
 	public ClassStorage applyInjector() throws IOException {
-		final Path rdiOut = MCPPaths.get(mcp, REMAPPED, side);
+		String inputs = getRemapInputs();
+		Files.deleteIfExists(MCPPaths.get(mcp, REMAPPED_INPUTS, side));
+		RDInjector injector = setupInjector();
+		try (RemappedJar jar = new RemappedJar(injector.getStorage(), getOriginalJars())) {
+			jar.write(MCPPaths.get(mcp, REMAPPED, side));
+		}
+		writeRemapInputs(inputs);
+		return injector.getStorage();
+	}
+
+	/**
+	 * Serializes the remapped classes once. The decompile stage reads them from memory while they're written to the remapped jar,
+	 * the class nodes aren't referenced afterwards.
+	 */
+	private void writeRemapped(RDInjector injector, Path rdiOut, String inputs) throws IOException {
+		Files.deleteIfExists(MCPPaths.get(mcp, REMAPPED_INPUTS, side));
+		RemappedJar jar = new RemappedJar(injector.getStorage(), getOriginalJars());
+		remapped = jar;
+		remappedWriter = CompletableFuture.runAsync(() -> {
+			try {
+				jar.write(rdiOut);
+				writeRemapInputs(inputs);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+	}
+
+	/**
+	 * @return jars read by the injector, in the order their resources are added to the remapped jar
+	 */
+	private List<Path> getOriginalJars() {
+		List<Path> jars = new ArrayList<>();
+		if (side == Side.MERGED) {
+			jars.add(MCPPaths.get(mcp, JAR_ORIGINAL, Side.SERVER));
+			jars.add(MCPPaths.get(mcp, JAR_ORIGINAL, Side.CLIENT));
+		} else {
+			jars.add(MCPPaths.get(mcp, JAR_ORIGINAL, side));
+		}
+		return jars;
+	}
+
+	/**
+	 * @return conf patch to apply while decompiling or <code>null</code>
+	 */
+	private Patch getPatch(Path patchesPath) throws IOException {
+		if (!mcp.getOptions().getBooleanParameter(TaskParameter.PATCHES) || !Files.exists(patchesPath)) {
+			return null;
+		}
+		// Same file name prefixes as PatchOperation uses by default
+		return new Patch(patchesPath, "a/", "b/");
+	}
+
+	/**
+	 * Shares vanilla classes of an hMod workspace with the server decompile cache, so only classes hMod added or changed need decompiling
+	 */
+	private void setHModBaseCache(Decompiler decompiler) throws IOException {
+		Path serverJar = MCPPaths.get(mcp, JAR_ORIGINAL, Side.SERVER);
+		if (side != Side.HMOD || !mcp.getOptions().getBooleanParameter(TaskParameter.DECOMPILE_CACHE) || !Files.exists(serverJar)) {
+			return;
+		}
+		JarDelta delta = JarDelta.compare(MCPPaths.get(mcp, JAR_ORIGINAL, side), serverJar);
+		Set<String> baseClasses = new HashSet<>();
+		if (mappings == null) {
+			// Remapping was skipped, default package classes are renamed below
+			mappings = getMappings(MCPPaths.get(mcp, MAPPINGS), new ClassStorage(new ArrayList<>()), side);
+		}
+		// Only classes which get the same name on both sides can share sources.
+		// Unmapped classes land in different packages and hMod classes rely on package access to them, so they are decompiled again
+		Mappings serverMappings = getMappings(MCPPaths.get(mcp, MAPPINGS), new ClassStorage(new ArrayList<>()), Side.SERVER);
+		for (String name : delta.unchanged) {
+			String mappedName = getMappedName(mappings, name, side);
+			if (mappedName.equals(getMappedName(serverMappings, name, Side.SERVER))) {
+				baseClasses.add(mappedName);
+			}
+		}
+		decompiler.setBaseCache(MCPPaths.get(mcp, DECOMPILE_CACHE, Side.SERVER), baseClasses);
+		log("hMod changes " + delta.changed.size() + " and adds " + delta.added.size() + " classes of the server jar, " + baseClasses.size() + " classes are shared with the server cache");
+	}
+
+	/**
+	 * Describes everything the remapped jar depends on: original jars, mappings, exceptions, access files and generics options
+	 */
+	private String getRemapInputs() throws IOException {
+		List<Path> files = new ArrayList<>();
+		if (side == Side.MERGED) {
+			files.add(MCPPaths.get(mcp, JAR_ORIGINAL, Side.SERVER));
+			files.add(MCPPaths.get(mcp, JAR_ORIGINAL, Side.CLIENT));
+			files.add(MCPPaths.get(mcp, ACCESS, Side.CLIENT));
+			files.add(MCPPaths.get(mcp, ACCESS, Side.SERVER));
+		} else {
+			files.add(MCPPaths.get(mcp, JAR_ORIGINAL, side));
+			files.add(MCPPaths.get(mcp, ACCESS, side));
+		}
+		files.add(MCPPaths.get(mcp, MAPPINGS));
+		files.add(MCPPaths.get(mcp, EXC));
+		StringBuilder sb = new StringBuilder();
+		sb.append("version ").append(MCP.VERSION).append('\n');
+		for (Path file : files) {
+			sb.append(file.getFileName()).append(' ').append(Files.exists(file) ? Util.getSHA1(file) : "-").append('\n');
+		}
+		sb.append(TaskParameter.GUESS_GENERICS.name).append(' ').append(mcp.getOptions().getBooleanParameter(TaskParameter.GUESS_GENERICS)).append('\n');
+		sb.append(TaskParameter.STRIP_GENERICS.name).append(' ').append(mcp.getOptions().getBooleanParameter(TaskParameter.STRIP_GENERICS)).append('\n');
+		return sb.toString();
+	}
+
+	/**
+	 * @return <code>true</code> if the remapped jar was written from the given inputs
+	 */
+	private boolean isRemappedCurrent(Path rdiOut, String inputs) throws IOException {
+		Path inputsFile = MCPPaths.get(mcp, REMAPPED_INPUTS, side);
+		if (!Files.exists(rdiOut) || !Files.exists(inputsFile)) {
+			return false;
+		}
+		return inputs.equals(new String(Files.readAllBytes(inputsFile), StandardCharsets.UTF_8));
+	}
+
+	private void writeRemapInputs(String inputs) throws IOException {
+		Files.write(MCPPaths.get(mcp, REMAPPED_INPUTS, side), inputs.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static int getClassVersion(Path jar) throws IOException {
+		int version = -1;
+		try (ZipIndex zip = new ZipIndex(jar)) {
+			for (String name : zip.getNames()) {
+				if (!name.endsWith(".class")) {
+					continue;
+				}
+				byte[] bytes = zip.getBytes(name);
+				// Minor and major version, as in ClassNode.version
+				int minor = (bytes[4] & 0xFF) << 8 | bytes[5] & 0xFF;
+				int major = (bytes[6] & 0xFF) << 8 | bytes[7] & 0xFF;
+				version = Math.max(version, minor << 16 | major);
+			}
+		}
+		return version;
+	}
+
+	private static String getMappedName(Mappings mappings, String name, Side side) {
+		if (mappings == null) {
+			return name;
+		}
+		String mapped = mappings.classes.get(name);
+		if (mapped == null && name.indexOf('/') == -1) {
+			// Same as getMappings for classes without mappings
+			return side != Side.HMOD ? "net/minecraft/src/" + name : "Hey0/mod/" + name;
+		}
+		return mapped == null ? name : mapped;
+	}
+
+	private RDInjector setupInjector() throws IOException {
 		final Path mappingsPath = MCPPaths.get(mcp, MAPPINGS);
 		final boolean guessGenerics = mcp.getOptions().getBooleanParameter(TaskParameter.GUESS_GENERICS);
 		final boolean stripGenerics = mcp.getOptions().getBooleanParameter(TaskParameter.STRIP_GENERICS);
 		final boolean hasLWJGL = side == Side.CLIENT || side == Side.MERGED;
 
 		RDInjector injector = new RDInjector();
+		// Remapped names are taken from the mappings, so they're pooled together with names read from the jars
+		NamePool names = new NamePool();
 		Path path;
-		Mappings mappings;
 
 		if (side == Side.MERGED) {
-			path = MCPPaths.get(mcp, JAR_ORIGINAL, Side.SERVER);
-			injector.setStorage(new ClassStorage(IOUtil.readJar(path)));
-			injector.addResources(path);
-			if (stripGenerics) {
-				injector.stripLVT();
-				injector.addTransform(Transform::stripSignatures);
-			}
-			mappings = getMappings(mappingsPath, injector.getStorage(), Side.SERVER);
-			if (mappings != null) {
-				injector.applyMappings(mappings);
-			}
-			injector.transform();
-			ClassStorage serverStorage = injector.getStorage();
-
+			// Server and client are read, stripped and remapped concurrently until they're merged.
+			// Each side reads its own mappings, so neither injector sees the other modify them
+			final Path serverPath = MCPPaths.get(mcp, JAR_ORIGINAL, Side.SERVER);
+			CompletableFuture<ClassStorage> serverTransform = CompletableFuture.supplyAsync(() -> {
+				ClassStorage serverStorage = readStorage(serverPath, names);
+				Mappings serverMappings;
+				try {
+					serverMappings = getMappings(mappingsPath, serverStorage, Side.SERVER);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				RDInjector serverInjector = new RDInjector();
+				serverInjector.setStorage(serverStorage);
+				if (stripGenerics) {
+					serverInjector.stripLVT();
+					serverInjector.addTransform(Transform::stripSignatures);
+				}
+				if (serverMappings != null) {
+					names.internValues(serverMappings.classes);
+					serverInjector.applyMappings(serverMappings);
+				}
+				serverInjector.transform();
+				return serverInjector.getStorage();
+			});
 			path = MCPPaths.get(mcp, JAR_ORIGINAL, Side.CLIENT);
-			injector.setStorage(new ClassStorage(IOUtil.readJar(path)));
-			injector.addResources(path);
+			ClassStorage clientStorage = readStorage(path, names);
+			injector.setStorage(clientStorage);
+			mappings = getMappings(mappingsPath, clientStorage, Side.CLIENT);
 			if (stripGenerics) {
 				injector.stripLVT();
 				injector.addTransform(Transform::stripSignatures);
 			}
-			mappings = getMappings(mappingsPath, injector.getStorage(), Side.CLIENT);
 			if (mappings != null) {
+				names.internValues(mappings.classes);
 				injector.applyMappings(mappings);
 			}
-			injector.mergeWith(serverStorage);
+			injector.transform();
+			injector.mergeWith(join(serverTransform));
 		} else {
 			path = MCPPaths.get(mcp, JAR_ORIGINAL, side);
-			injector.setStorage(new ClassStorage(IOUtil.readJar(path)));
-			injector.addResources(path);
+			injector.setStorage(new ClassStorage(JarClassReader.readJar(path, names)));
 			if (stripGenerics) {
 				injector.stripLVT();
 				injector.addTransform(Transform::stripSignatures);
@@ -161,39 +497,49 @@ public class TaskDecompile extends TaskStaged {
 			
 			mappings = getMappings(mappingsPath, injector.getStorage(), side);
 			if (mappings != null) {
+				names.internValues(mappings.classes);
 				injector.applyMappings(mappings);
 			}
 			
 		}
-		injector.addTransform(Transform::decomposeVars);
-		injector.addTransform(Transform::replaceCommonConstants);
-		if (hasLWJGL) injector.addVisitor(new GLConstants(null));
+		injector.transform();
+
+		// Injector transforms may look up other classes of the storage, so only GL constants run on chunks in parallel
+		TransformPipeline pipeline = new TransformPipeline()
+				.wholeStorage(Transform::decomposeVars)
+				.wholeStorage(Transform::replaceCommonConstants);
+		if (hasLWJGL) pipeline.eachClass(new GLConstants(null)::visitClass);
+		pipeline.run(injector.getStorage());
+
 		injector.restoreSourceFile();
 		injector.fixInnerClasses();
 		injector.fixImplicitConstructors();
 		if (guessGenerics) injector.guessGenerics();
 		final Path exc = MCPPaths.get(mcp, EXC);
-		if (Files.exists(exc)) {
-			injector.fixExceptions(exc);
-		}
+		List<Path> accessFiles = new ArrayList<>();
 		if (side == Side.MERGED) {
-			Path acc = MCPPaths.get(mcp, MCPPaths.ACCESS, Side.CLIENT);
-			if (Files.exists(acc)) {
-				injector.fixAccess(acc);
-			}
-			acc = MCPPaths.get(mcp, MCPPaths.ACCESS, Side.SERVER);
-			if (Files.exists(acc)) {
-				injector.fixAccess(acc);
-			}
+			accessFiles.add(MCPPaths.get(mcp, ACCESS, Side.CLIENT));
+			accessFiles.add(MCPPaths.get(mcp, ACCESS, Side.SERVER));
 		} else {
-			final Path acc = MCPPaths.get(mcp, MCPPaths.ACCESS, side);
-			if (Files.exists(acc)) {
-				injector.fixAccess(acc);
+			accessFiles.add(MCPPaths.get(mcp, ACCESS, side));
+		}
+		ConfIndex conf = ConfIndex.load(exc, accessFiles, MCPPaths.get(mcp, CONF_INDEX, side));
+		if (conf == null) {
+			// Missing conf files or lines the index doesn't understand, leave them to the injector
+			if (Files.exists(exc)) {
+				injector.fixExceptions(exc);
+			}
+			for (Path acc : accessFiles) {
+				if (Files.exists(acc)) {
+					injector.fixAccess(acc);
+				}
 			}
 		}
 		injector.transform();
-		injector.write(rdiOut);
-		return injector.getStorage();
+		if (conf != null) {
+			new TransformPipeline().eachClass(conf::apply).run(injector.getStorage());
+		}
+		return injector;
 	}
 
 	@Override
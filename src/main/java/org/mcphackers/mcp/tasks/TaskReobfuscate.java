@@ -7,9 +7,11 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.regex.Pattern;
 import java.util.stream.Stream;
 
@@ -17,14 +19,17 @@ import org.mcphackers.mcp.MCP;
 import org.mcphackers.mcp.MCPPaths;
 import org.mcphackers.mcp.tasks.mode.TaskParameter;
 import org.mcphackers.mcp.tools.FileUtil;
+import org.mcphackers.mcp.tools.NamePool;
+import org.mcphackers.mcp.tools.injector.JarClassReader;
+import org.mcphackers.mcp.tools.injector.LazyClassList;
 import org.mcphackers.mcp.tools.injector.SourceFileTransformer;
 import org.mcphackers.mcp.tools.mappings.MappingUtil;
 import org.mcphackers.rdi.injector.data.ClassStorage;
 import org.mcphackers.rdi.injector.data.Mappings;
-import org.mcphackers.rdi.nio.ClassStorageWriter;
 import org.mcphackers.rdi.nio.MappingsIO;
 import org.mcphackers.rdi.nio.RDInjector;
 import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.tree.ClassNode;
 
 public class TaskReobfuscate extends TaskStaged {
 
@@ -64,20 +69,32 @@ public class TaskReobfuscate extends TaskStaged {
 
 		Side[] sides = side == Side.MERGED ? new Side[]{Side.CLIENT, Side.SERVER} : new Side[]{side};
 
-		Map<String, String> originalHashes = gatherMD5Hashes(false);
-		Map<String, String> recompHashes = gatherMD5Hashes(true);
+		// Both hash tables list the same classes and mostly the same hashes
+		NamePool names = new NamePool();
+		Map<String, String> originalHashes = gatherMD5Hashes(false, names);
+		Map<String, String> recompHashes = gatherMD5Hashes(true, names);
+
+		Pattern regexPattern = Pattern.compile(mcp.getOptions().getStringParameter(TaskParameter.EXCLUDED_CLASSES));
 
 		for (Side localSide : sides) {
 			final Path reobfDir = MCPPaths.get(mcp, REOBF_SIDE, localSide);
 			if (!Files.exists(reobfDir)) {
 				Files.createDirectories(reobfDir);
 			}
-			final Path reobfJar = MCPPaths.get(mcp, REOBF_JAR, localSide);
-			if (!Files.exists(reobfJar.getParent())) {
-				Files.createDirectories(reobfJar.getParent());
-			}
-			Files.deleteIfExists(reobfJar);
-			RDInjector injector = new RDInjector(reobfBin);
+			// Reobfuscated classes used to be written to a jar and extracted from it, remove the leftover jar
+			Files.deleteIfExists(MCPPaths.get(mcp, REOBF_JAR, localSide));
+			// Classes which aren't extracted are only needed for their declarations while remapping
+			Set<String> extracted = new HashSet<>();
+			LazyClassList classes = JarClassReader.readDirectory(reobfBin, names, name -> {
+				boolean extract = shouldExtract(name, originalHashes, recompHashes, regexPattern);
+				if (extract) {
+					extracted.add(name);
+				}
+				return extract;
+			});
+			classes.load();
+			RDInjector injector = new RDInjector();
+			injector.setStorage(new ClassStorage(classes));
 			Mappings mappings = getMappings(injector.getStorage(), localSide);
 			if (mappings != null) {
 				injector.applyMappings(mappings);
@@ -86,40 +103,40 @@ public class TaskReobfuscate extends TaskStaged {
 				injector.addTransform(SourceFileTransformer::removeSourceFileAttributes);
 			}
 			injector.transform();
-			new ClassStorageWriter(injector.getStorage(), ClassWriter.COMPUTE_MAXS).write(Files.newOutputStream(reobfJar));
 
 			Map<String, String> reversedNames = new HashMap<>();
 			if (mappings != null) {
 				for (Entry<String, String> entry : mappings.classes.entrySet()) {
-					reversedNames.put(entry.getValue(), entry.getKey());
+					reversedNames.put(names.intern(entry.getValue()), names.intern(entry.getKey()));
 				}
 			}
 			FileUtil.cleanDirectory(reobfDir);
-			Pattern regexPattern = Pattern.compile(mcp.getOptions().getStringParameter(TaskParameter.EXCLUDED_CLASSES));
-			FileUtil.extract(reobfJar, reobfDir, entry -> {
-				if (entry.isDirectory()) {
-					return false;
-				}
-				String obfClassName = entry.getName().replace(".class", "");
-				// Force inner classes to compare outer class hash
-				String className = obfClassName;
-				int index = className.indexOf('$');
-				if (index != -1) {
-					className = className.substring(0, index);
-				}
-				String deobfName = reversedNames.get(className);
-				if (deobfName == null) {
-					deobfName = className;
+			// Only classes which are extracted are written
+			for (ClassNode node : injector.getStorage()) {
+				if (extracted.contains(reversedNames.getOrDefault(node.name, node.name))) {
+					ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+					node.accept(writer);
+					Path file = reobfDir.resolve(node.name + ".class").normalize();
+					Files.createDirectories(file.getParent());
+					Files.write(file, writer.toByteArray());
 				}
-				String hash = originalHashes.get(deobfName);
-				String hashModified = recompHashes.get(deobfName);
-				boolean extract = (hash == null) || !hash.equals(hashModified) && !regexPattern.matcher(deobfName).matches();
-				if (extract) {
-					System.out.println(reversedNames.get(obfClassName) + " : " + obfClassName);
-				}
-				return extract;
-			});
+			}
+		}
+	}
+
+	/**
+	 * @param name deobfuscated internal name of a recompiled class
+	 */
+	private static boolean shouldExtract(String name, Map<String, String> originalHashes, Map<String, String> recompHashes, Pattern regexPattern) {
+		// Force inner classes to compare outer class hash
+		String className = name;
+		int index = className.indexOf('$');
+		if (index != -1) {
+			className = className.substring(0, index);
 		}
+		String hash = originalHashes.get(className);
+		String hashModified = recompHashes.get(className);
+		return (hash == null) || !hash.equals(hashModified) && !regexPattern.matcher(className).matches();
 	}
 
 	private Mappings getMappings(ClassStorage storage, Side side) throws IOException {
@@ -181,14 +198,14 @@ public class TaskReobfuscate extends TaskStaged {
 		}
 	}
 
-	private Map<String, String> gatherMD5Hashes(boolean reobf) throws IOException {
+	private Map<String, String> gatherMD5Hashes(boolean reobf, NamePool names) throws IOException {
 		final Path md5 = MCPPaths.get(mcp, reobf ? MCPPaths.MD5_RO : MCPPaths.MD5, side);
 		Map<String, String> hashes = new HashMap<>();
 
 		try (Stream<String> lines = Files.lines(md5)) {
 			lines.forEach((line) -> {
 				String[] tokens = line.split(" ");
-				hashes.put(tokens[0], tokens[1]);
+				hashes.put(names.intern(tokens[0]), names.intern(tokens[1]));
 			});
 		}
 		return hashes;
@@ -11,14 +11,13 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
 
 import org.json.JSONArray;
 import org.mcphackers.mcp.MCP;
 import org.mcphackers.mcp.MCPPaths;
 import org.mcphackers.mcp.tasks.mode.TaskParameter;
 import org.mcphackers.mcp.tools.Util;
+import org.mcphackers.mcp.tools.ZipIndex;
 import org.mcphackers.mcp.tools.versions.json.Rule;
 import org.mcphackers.mcp.tools.versions.json.Version;
 import org.mcphackers.mcp.tools.versions.json.Version.Argument;
@@ -38,30 +37,23 @@ public class TaskRun extends TaskStaged {
 			return version.mainClass;
 		}
 		if (side == Side.SERVER) {
-			Path jarPath = MCPPaths.get(mcp, JAR_ORIGINAL, Side.SERVER);
-			try (ZipInputStream zipIn = new ZipInputStream(Files.newInputStream(jarPath))) {
-				ZipEntry zipEntry;
-				while ((zipEntry = zipIn.getNextEntry()) != null) {
-					if (zipEntry.getName().endsWith(".class")) {
-						String className = zipEntry.getName().substring(0, zipEntry.getName().length() - 6).replace('\\', '.').replace('/', '.');
-						if (SERVER_MAIN.contains(className)) {
-							return className;
-						}
-					}
-				}
-			}
+			return findMain(MCPPaths.get(mcp, JAR_ORIGINAL, Side.SERVER), SERVER_MAIN);
 		}
 		
 		if (side == Side.HMOD) {
-			Path jarPath = MCPPaths.get(mcp, JAR_ORIGINAL, Side.HMOD);
-			try (ZipInputStream zipIn = new ZipInputStream(Files.newInputStream(jarPath))) {
-				ZipEntry zipEntry;
-				while ((zipEntry = zipIn.getNextEntry()) != null) {
-					if (zipEntry.getName().endsWith(".class")) {
-						String className = zipEntry.getName().substring(0, zipEntry.getName().length() - 6).replace('\\', '.').replace('/', '.');
-						if (HMOD_MAIN.contains(className)) {
-							return className;
-						}
+			return findMain(MCPPaths.get(mcp, JAR_ORIGINAL, Side.HMOD), HMOD_MAIN);
+		}
+		return null;
+	}
+
+	private static String findMain(Path jarPath, List<String> mainClasses) throws IOException {
+		// Only the central directory needs to be read
+		try (ZipIndex zip = new ZipIndex(jarPath)) {
+			for (String name : zip.getNames()) {
+				if (name.endsWith(".class")) {
+					String className = name.substring(0, name.length() - 6).replace('\\', '.').replace('/', '.');
+					if (mainClasses.contains(className)) {
+						return className;
 					}
 				}
 			}
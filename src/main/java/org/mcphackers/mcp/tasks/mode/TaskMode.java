@@ -55,6 +55,13 @@ public class TaskMode {
 					TaskParameter.JAVAC_ARGS,
 					TaskParameter.IGNORED_PACKAGES,
 					TaskParameter.FERNFLOWER_OPTIONS,
+					TaskParameter.DECOMPILE_THREADS,
+					TaskParameter.DECOMPILE_CACHE,
+					TaskParameter.DECOMPILE_TIMEOUT,
+					TaskParameter.DECOMPILE_CLASSES,
+					TaskParameter.DECOMPILE_WORKERS,
+					TaskParameter.DECOMPILE_WORKER_ARGS,
+					TaskParameter.DECOMPILE_HEAP_BUDGET,
 					TaskParameter.PATCHES,
 					TaskParameter.SIDE
 			})
@@ -37,7 +37,14 @@ public enum TaskParameter {
 	GUESS_GENERICS("generics", Boolean.class, false),
 	STRIP_GENERICS("stripgenerics", Boolean.class, false),
 	OUTPUT_SRC("outputsrc", Boolean.class, true),
-	STRIP_SOURCE_FILE("stripsourcefile", Boolean.class, true);
+	STRIP_SOURCE_FILE("stripsourcefile", Boolean.class, true),
+	DECOMPILE_THREADS("decompile_threads", Integer.class, 1),
+	DECOMPILE_CACHE("decompile_cache", Boolean.class, true),
+	DECOMPILE_TIMEOUT("decompile_timeout", Integer.class, 120),
+	DECOMPILE_CLASSES("class", String[].class, new String[0]),
+	DECOMPILE_WORKERS("decompile_workers", Integer.class, 0),
+	DECOMPILE_WORKER_ARGS("decompile_worker_args", String[].class, new String[]{"-Xmx512M"}),
+	DECOMPILE_HEAP_BUDGET("decompile_heap", Integer.class, 0);
 
 	public static final TaskParameter[] VALUES = TaskParameter.values();
 
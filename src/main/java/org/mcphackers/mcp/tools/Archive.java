@@ -0,0 +1,26 @@
+package org.mcphackers.mcp.tools;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Entries of a jar, read by name. Implementations may be read by several threads at once.
+ */
+public interface Archive {
+	/**
+	 * @return names of all entries
+	 */
+	List<String> getNames();
+
+	/**
+	 * @param name entry name
+	 * @return uncompressed size of the entry or -1 if there is no such entry
+	 */
+	int getSize(String name);
+
+	/**
+	 * @param name entry name
+	 * @return uncompressed contents of the entry or <code>null</code> if there is no such entry
+	 */
+	byte[] getBytes(String name) throws IOException;
+}
@@ -0,0 +1,49 @@
+package org.mcphackers.mcp.tools;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Classes of a jar compared to the classes of the jar it's based on, for example an hMod jar compared to the vanilla server
+ */
+public final class JarDelta {
+	/**
+	 * Internal names of classes with bytecode identical to the base jar
+	 */
+	public final Set<String> unchanged = new HashSet<>();
+	/**
+	 * Internal names of classes which exist in the base jar with different bytecode
+	 */
+	public final Set<String> changed = new HashSet<>();
+	/**
+	 * Internal names of classes which don't exist in the base jar
+	 */
+	public final Set<String> added = new HashSet<>();
+
+	private JarDelta() {
+	}
+
+	public static JarDelta compare(Path jar, Path baseJar) throws IOException {
+		JarDelta delta = new JarDelta();
+		try (ZipIndex zip = new ZipIndex(jar); ZipIndex baseZip = new ZipIndex(baseJar)) {
+			for (String name : zip.getNames()) {
+				if (!name.endsWith(".class")) {
+					continue;
+				}
+				String className = name.substring(0, name.length() - 6);
+				byte[] baseBytes = baseZip.getBytes(name);
+				if (baseBytes == null) {
+					delta.added.add(className);
+				} else if (Arrays.equals(zip.getBytes(name), baseBytes)) {
+					delta.unchanged.add(className);
+				} else {
+					delta.changed.add(className);
+				}
+			}
+		}
+		return delta;
+	}
+}
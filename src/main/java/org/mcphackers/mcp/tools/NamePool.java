@@ -0,0 +1,30 @@
+package org.mcphackers.mcp.tools;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Pool of class names, member names and descriptors shared by the structures built during one task,
+ * so that every distinct name is held once. Unlike {@link String#intern()} the pool is released with the task.
+ */
+public final class NamePool {
+	private final Map<String, String> names = new ConcurrentHashMap<>();
+
+	/**
+	 * @return pooled string equal to <code>s</code>, or <code>null</code> if <code>s</code> is <code>null</code>
+	 */
+	public String intern(String s) {
+		if (s == null) {
+			return null;
+		}
+		String pooled = names.putIfAbsent(s, s);
+		return pooled == null ? s : pooled;
+	}
+
+	/**
+	 * Replaces the values of the map with pooled strings
+	 */
+	public void internValues(Map<String, String> map) {
+		map.replaceAll((key, value) -> intern(value));
+	}
+}
@@ -10,6 +10,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.file.Files;
@@ -82,6 +83,48 @@ public abstract class Util {
 		return proc.exitValue();
 	}
 
+	/**
+	 * Runs a command and passes its standard output to <code>output</code>, standard error is inherited.
+	 * Unlike {@link #runCommand(String[], Path, boolean)} the process is destroyed when the waiting thread is interrupted.
+	 *
+	 * @return exit code of the process
+	 */
+	public static int runCommand(String[] cmd, Path dir, OutputHandler output) throws IOException {
+		ProcessBuilder procBuilder = new ProcessBuilder(cmd);
+		if (dir != null) {
+			procBuilder.directory(dir.toAbsolutePath().toFile());
+		}
+		procBuilder.redirectError(ProcessBuilder.Redirect.INHERIT);
+		Process proc = procBuilder.start();
+		Thread hook = new Thread(proc::destroy);
+		Runtime.getRuntime().addShutdownHook(hook);
+		IOException[] failure = new IOException[1];
+		Thread stdout = new Thread(() -> {
+			try (InputStream in = proc.getInputStream()) {
+				output.handle(in);
+			} catch (IOException e) {
+				failure[0] = e;
+				proc.destroyForcibly();
+			}
+		});
+		stdout.setDaemon(true);
+		stdout.start();
+		try {
+			proc.waitFor();
+			stdout.join();
+		} catch (InterruptedException e) {
+			proc.destroyForcibly();
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("thread interrupted while runCommand was waiting for a process to finish");
+		} finally {
+			Runtime.getRuntime().removeShutdownHook(hook);
+		}
+		if (failure[0] != null) {
+			throw failure[0];
+		}
+		return proc.exitValue();
+	}
+
 	public static void runCommand(String[] cmd) throws IOException {
 		ProcessBuilder procBuilder = new ProcessBuilder(cmd);
 		procBuilder.start();
@@ -304,4 +347,11 @@ public abstract class Util {
 		}
 		return 8;
 	}
+
+	/**
+	 * Reads standard output of a process
+	 */
+	public interface OutputHandler {
+		void handle(InputStream in) throws IOException;
+	}
 }
@@ -0,0 +1,208 @@
+package org.mcphackers.mcp.tools;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Read-only view of a zip file. The central directory is read once into an index of entry offsets
+ * and entries are read with positional reads, so several threads may read entries at once.
+ * The file isn't memory-mapped, closing the index releases it right away. Inflaters and input buffers are reused per thread.
+ */
+public final class ZipIndex implements Archive, Closeable {
+	private static final int LOCAL_HEADER = 0x04034b50;
+	private static final int CENTRAL_HEADER = 0x02014b50;
+	private static final int END_HEADER = 0x06054b50;
+	private static final int END_SIZE = 22;
+	private static final int LOCAL_HEADER_SIZE = 30;
+	private static final int STORED = 0;
+	private static final int DEFLATED = 8;
+
+	private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(() -> new Inflater(true));
+	private static final ThreadLocal<byte[]> INPUT_BUFFER = ThreadLocal.withInitial(() -> new byte[8192]);
+
+	private final Path path;
+	private final FileChannel channel;
+	private final Map<String, Entry> entries = new HashMap<>();
+	private final List<String> names = new ArrayList<>();
+
+	public ZipIndex(Path path) throws IOException {
+		this.path = path;
+		this.channel = FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new ZipException("Zip file too large: " + path);
+			}
+			readCentralDirectory();
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	private ByteBuffer read(long position, int length) throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+		read(buf, position);
+		buf.flip();
+		return buf;
+	}
+
+	private void read(ByteBuffer buf, long position) throws IOException {
+		while (buf.hasRemaining()) {
+			int read = channel.read(buf, position);
+			if (read < 0) {
+				throw new ZipException("Unexpected end of file: " + path);
+			}
+			position += read;
+		}
+	}
+
+	private void readCentralDirectory() throws IOException {
+		long size = channel.size();
+		int tailLength = (int) Math.min(size, END_SIZE + 0xFFFF);
+		ByteBuffer tail = read(size - tailLength, tailLength);
+		int end = -1;
+		for (int i = tailLength - END_SIZE; i >= 0; i--) {
+			if (tail.getInt(i) == END_HEADER) {
+				end = i;
+				break;
+			}
+		}
+		if (end == -1) {
+			throw new ZipException("End of central directory not found: " + path);
+		}
+		int count = tail.getShort(end + 10) & 0xFFFF;
+		long length = tail.getInt(end + 12) & 0xFFFFFFFFL;
+		long offset = tail.getInt(end + 16) & 0xFFFFFFFFL;
+		if (count == 0xFFFF || offset == 0xFFFFFFFFL) {
+			throw new ZipException("Zip64 is not supported: " + path);
+		}
+		if (offset + length > size) {
+			throw new ZipException("Invalid central directory in " + path);
+		}
+		ByteBuffer buf = read(offset, (int) length);
+		int pos = 0;
+		for (int i = 0; i < count; i++) {
+			if (buf.getInt(pos) != CENTRAL_HEADER) {
+				throw new ZipException("Invalid central directory header in " + path);
+			}
+			int method = buf.getShort(pos + 10) & 0xFFFF;
+			int compressedSize = buf.getInt(pos + 20);
+			int entrySize = buf.getInt(pos + 24);
+			int nameLength = buf.getShort(pos + 28) & 0xFFFF;
+			int extraLength = buf.getShort(pos + 30) & 0xFFFF;
+			int commentLength = buf.getShort(pos + 32) & 0xFFFF;
+			int localOffset = buf.getInt(pos + 42);
+			byte[] nameBytes = new byte[nameLength];
+			buf.position(pos + 46);
+			buf.get(nameBytes);
+			String name = new String(nameBytes, StandardCharsets.UTF_8);
+			if (entries.put(name, new Entry(method, compressedSize, entrySize, localOffset)) == null) {
+				names.add(name);
+			}
+			pos += 46 + nameLength + extraLength + commentLength;
+		}
+	}
+
+	/**
+	 * @return names of all entries in the order of the central directory
+	 */
+	@Override
+	public List<String> getNames() {
+		return Collections.unmodifiableList(names);
+	}
+
+	/**
+	 * @param name entry name
+	 * @return uncompressed size of the entry or -1 if there is no such entry
+	 */
+	@Override
+	public int getSize(String name) {
+		Entry entry = entries.get(name);
+		return entry == null ? -1 : entry.size;
+	}
+
+	/**
+	 * @param name entry name
+	 * @return uncompressed contents of the entry or <code>null</code> if there is no such entry
+	 */
+	@Override
+	public byte[] getBytes(String name) throws IOException {
+		Entry entry = entries.get(name);
+		if (entry == null) {
+			return null;
+		}
+		ByteBuffer header = read(entry.localOffset, LOCAL_HEADER_SIZE);
+		if (header.getInt(0) != LOCAL_HEADER) {
+			throw new ZipException("Invalid local header for " + name + " in " + path);
+		}
+		int nameLength = header.getShort(26) & 0xFFFF;
+		int extraLength = header.getShort(28) & 0xFFFF;
+		long dataOffset = (long) entry.localOffset + LOCAL_HEADER_SIZE + nameLength + extraLength;
+		byte[] bytes = new byte[entry.size];
+		if (entry.method == STORED) {
+			read(ByteBuffer.wrap(bytes), dataOffset);
+			return bytes;
+		}
+		if (entry.method != DEFLATED) {
+			throw new ZipException("Unsupported compression method " + entry.method + " for " + name + " in " + path);
+		}
+		byte[] input = INPUT_BUFFER.get();
+		if (input.length < entry.compressedSize) {
+			input = new byte[entry.compressedSize];
+			INPUT_BUFFER.set(input);
+		}
+		read(ByteBuffer.wrap(input, 0, entry.compressedSize), dataOffset);
+		Inflater inflater = INFLATER.get();
+		inflater.reset();
+		inflater.setInput(input, 0, entry.compressedSize);
+		try {
+			int written = 0;
+			while (written < bytes.length) {
+				int inflated = inflater.inflate(bytes, written, bytes.length - written);
+				if (inflated == 0 && (inflater.finished() || inflater.needsDictionary() || inflater.needsInput())) {
+					break;
+				}
+				written += inflated;
+			}
+			if (written != bytes.length) {
+				throw new ZipException("Invalid size of entry " + name + " in " + path);
+			}
+		} catch (DataFormatException e) {
+			throw new ZipException("Invalid compressed data for " + name + " in " + path + ": " + e.getMessage());
+		}
+		return bytes;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	private static final class Entry {
+		private final int method;
+		private final int compressedSize;
+		private final int size;
+		private final int localOffset;
+
+		private Entry(int method, int compressedSize, int size, int localOffset) {
+			this.method = method;
+			this.compressedSize = compressedSize;
+			this.size = size;
+			this.localOffset = localOffset;
+		}
+	}
+}
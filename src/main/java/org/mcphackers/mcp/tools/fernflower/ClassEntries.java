@@ -0,0 +1,372 @@
+package org.mcphackers.mcp.tools.fernflower;
+
+import de.fernflower.main.extern.IBytecodeProvider;
+import de.fernflower.util.InterpreterUtil;
+import org.mcphackers.mcp.tools.Archive;
+import org.mcphackers.mcp.tools.ZipIndex;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.commons.ClassRemapper;
+import org.objectweb.asm.commons.Remapper;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Classes of one decompile and the bytecode provider of decompile contexts in this JVM.
+ * Classes of the source jar are read when they're needed, so the jar's contents are never held as a whole.
+ * The source may also be an {@link Archive} in memory, such as classes which were just remapped.
+ * Referenced library classes are held without method bodies.
+ */
+public class ClassEntries implements IBytecodeProvider, Closeable {
+	private final Path sourceJar;
+	private final Archive sourceArchive;
+	private final ZipFileCache openZips = new ZipFileCache();
+	/**
+	 * Referenced library classes without method bodies
+	 */
+	private final Map<String, byte[]> libraryEntries = new HashMap<>();
+	/**
+	 * Jars written for decompile contexts and whether their classes were stripped of code.
+	 * Their entries are served from the source jar instead of the written files
+	 */
+	private final Map<String, Boolean> inputJars = new ConcurrentHashMap<>();
+	/**
+	 * Declarations of referenced classes by internal name, shared by every group referencing them
+	 */
+	private final Map<String, Declaration> declarations = new ConcurrentHashMap<>();
+
+	public ClassEntries(Path source) {
+		this.sourceJar = source;
+		this.sourceArchive = null;
+	}
+
+	/**
+	 * @param source classes and resources to decompile, not closed by these entries
+	 */
+	public ClassEntries(Archive source) {
+		this.sourceJar = null;
+		this.sourceArchive = source;
+	}
+
+	/**
+	 * @return archive at <code>path</code>, kept open until these entries are closed
+	 */
+	public ZipIndex getZip(String path) throws IOException {
+		return openZips.get(path);
+	}
+
+	private Archive getSource() throws IOException {
+		if (sourceArchive != null) {
+			return sourceArchive;
+		}
+		return openZips.get(sourceJar.toAbsolutePath().toString());
+	}
+
+	/**
+	 * @return names of all entries of the source jar
+	 */
+	public List<String> getNames() throws IOException {
+		return getSource().getNames();
+	}
+
+	/**
+	 * @return bytes of a class or resource from the source jar or of a referenced library class
+	 */
+	public byte[] get(String name) throws IOException {
+		byte[] bytes = libraryEntries.get(name);
+		if (bytes == null) {
+			bytes = getSource().getBytes(name);
+		}
+		if (bytes == null) {
+			throw new IOException("Entry not found: " + name);
+		}
+		return bytes;
+	}
+
+	/**
+	 * @return uncompressed size of an entry of the source jar
+	 */
+	public int getSize(String name) throws IOException {
+		return getSource().getSize(name);
+	}
+
+	/**
+	 * Collects library classes referenced from the source jar, along with their super classes and interfaces.
+	 * Only these classes are added to decompile contexts instead of every class of every library.
+	 *
+	 * @return entry names of library classes, which are held without method bodies
+	 */
+	public List<String> addLibraryClasses(LibraryIndex index) throws IOException {
+		return addLibraryClasses(index, getSource().getNames());
+	}
+
+	/**
+	 * Collects library classes referenced from some classes of the source jar, along with their super classes and interfaces.
+	 *
+	 * @param names entry names of the source jar to scan for references
+	 * @return entry names of library classes, which are held without method bodies
+	 */
+	public List<String> addLibraryClasses(LibraryIndex index, Collection<String> names) throws IOException {
+		Archive source = getSource();
+		List<String> libraryClasses = new ArrayList<>();
+		Set<String> visited = new HashSet<>();
+		Deque<String> queue = new ArrayDeque<>(getReferences(names));
+		while (!queue.isEmpty()) {
+			String className = queue.poll();
+			String entryName = className + ".class";
+			if (!visited.add(className) || source.getSize(entryName) != -1) {
+				continue;
+			}
+			Path library = index.getLibrary(className);
+			byte[] bytes = library == null ? null : openZips.get(library.toAbsolutePath().toString()).getBytes(entryName);
+			if (bytes == null) {
+				continue;
+			}
+			libraryEntries.put(entryName, stripCode(bytes));
+			libraryClasses.add(entryName);
+			ClassReader reader = new ClassReader(bytes);
+			if (reader.getSuperName() != null) {
+				queue.add(reader.getSuperName());
+			}
+			Collections.addAll(queue, reader.getInterfaces());
+		}
+		return libraryClasses;
+	}
+
+	/**
+	 * Collects classes of the source jar referenced from some of its classes, along with their super classes and interfaces.
+	 * These are the classes a decompile context needs to resolve the given classes.
+	 *
+	 * @param names entry names of classes of the source jar
+	 * @return entry names of referenced classes which aren't in <code>names</code>
+	 */
+	public List<String> getReferencedClasses(Collection<String> names) throws IOException {
+		Archive source = getSource();
+		Set<String> visited = new HashSet<>();
+		for (String name : names) {
+			visited.add(name.substring(0, name.length() - ".class".length()));
+		}
+		List<String> classes = new ArrayList<>();
+		Deque<String> queue = new ArrayDeque<>(getReferences(names));
+		while (!queue.isEmpty()) {
+			String className = queue.poll();
+			String entryName = className + ".class";
+			if (!visited.add(className) || source.getSize(entryName) == -1) {
+				continue;
+			}
+			classes.add(entryName);
+			ClassReader reader = new ClassReader(source.getBytes(entryName));
+			if (reader.getSuperName() != null) {
+				queue.add(reader.getSuperName());
+			}
+			Collections.addAll(queue, reader.getInterfaces());
+		}
+		return classes;
+	}
+
+	/**
+	 * Digests the declarations of classes the given classes refer to, along with their super classes and interfaces.
+	 * Decompiled sources depend on these declarations, such as the signatures of called methods, but not on their code.
+	 * Classes are looked up in the source jar and the libraries, classes found in neither only contribute their name.
+	 *
+	 * @param names entry names of classes of the source jar
+	 * @return SHA-1 digest of the referenced declarations
+	 */
+	public byte[] getContextDigest(Collection<String> names, LibraryIndex index) throws IOException {
+		Set<String> own = new HashSet<>();
+		for (String name : names) {
+			own.add(name.substring(0, name.length() - ".class".length()));
+		}
+		Set<String> context = new TreeSet<>();
+		Deque<String> queue = new ArrayDeque<>(getReferences(names));
+		while (!queue.isEmpty()) {
+			String className = queue.poll();
+			if (own.contains(className) || !context.add(className)) {
+				continue;
+			}
+			queue.addAll(getDeclaration(className, index).supertypes);
+		}
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			for (String className : context) {
+				digest.update(className.getBytes(StandardCharsets.UTF_8));
+				digest.update(getDeclaration(className, index).digest);
+			}
+			return digest.digest();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e);
+		}
+	}
+
+	private Declaration getDeclaration(String className, LibraryIndex index) throws IOException {
+		Declaration declaration = declarations.get(className);
+		if (declaration != null) {
+			return declaration;
+		}
+		String entryName = className + ".class";
+		byte[] bytes = null;
+		if (getSource().getSize(entryName) != -1) {
+			bytes = getSource().getBytes(entryName);
+		} else {
+			Path library = index.getLibrary(className);
+			if (library != null) {
+				bytes = openZips.get(library.toAbsolutePath().toString()).getBytes(entryName);
+			}
+		}
+		declaration = bytes == null ? Declaration.MISSING : new Declaration(bytes);
+		declarations.put(className, declaration);
+		return declaration;
+	}
+
+	/**
+	 * Digest of a class without method bodies and its super classes and interfaces
+	 */
+	private static final class Declaration {
+		private static final Declaration MISSING = new Declaration();
+
+		private final byte[] digest;
+		private final List<String> supertypes = new ArrayList<>();
+
+		private Declaration() {
+			this.digest = new byte[0];
+		}
+
+		private Declaration(byte[] bytes) throws IOException {
+			try {
+				this.digest = MessageDigest.getInstance("SHA-1").digest(stripCode(bytes));
+			} catch (NoSuchAlgorithmException e) {
+				throw new IOException(e);
+			}
+			ClassReader reader = new ClassReader(bytes);
+			if (reader.getSuperName() != null) {
+				supertypes.add(reader.getSuperName());
+			}
+			Collections.addAll(supertypes, reader.getInterfaces());
+		}
+	}
+
+	/**
+	 * @return internal names of all classes referenced from the given classes of the source jar
+	 */
+	private Set<String> getReferences(Collection<String> names) throws IOException {
+		Archive source = getSource();
+		Set<String> referenced = new HashSet<>();
+		Remapper collector = new Remapper() {
+			@Override
+			public String map(String internalName) {
+				referenced.add(internalName);
+				return internalName;
+			}
+		};
+		ClassVisitor visitor = new ClassVisitor(Opcodes.ASM9) {
+			@Override
+			public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+				return new FieldVisitor(Opcodes.ASM9) {};
+			}
+
+			@Override
+			public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+				return new MethodVisitor(Opcodes.ASM9) {};
+			}
+		};
+		for (String name : names) {
+			if (name.endsWith(".class")) {
+				new ClassReader(source.getBytes(name)).accept(new ClassRemapper(visitor, collector), ClassReader.SKIP_FRAMES);
+			}
+		}
+		return referenced;
+	}
+
+	/**
+	 * Writes entries uncompressed, the jar is only read back by the decompiler.
+	 * Bytes are read from the source jar while writing, so only one class is held at a time
+	 *
+	 * @param stripCode whether classes are only used as context and only need their declarations
+	 */
+	public File writeJar(Path jar, List<String> names, boolean stripCode) throws IOException {
+		try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jar))) {
+			out.setMethod(ZipOutputStream.STORED);
+			for (String name : names) {
+				byte[] bytes = get(name);
+				if (stripCode && name.endsWith(".class")) {
+					bytes = stripCode(bytes);
+				}
+				CRC32 crc = new CRC32();
+				crc.update(bytes);
+				ZipEntry entry = new ZipEntry(name);
+				entry.setSize(bytes.length);
+				entry.setCompressedSize(bytes.length);
+				entry.setCrc(crc.getValue());
+				out.putNextEntry(entry);
+				out.write(bytes);
+				out.closeEntry();
+			}
+		}
+		File file = jar.toAbsolutePath().toFile();
+		inputJars.put(file.getAbsolutePath(), stripCode);
+		return file;
+	}
+
+	/**
+	 * Removes method bodies from a class which is only used as context.
+	 * Hierarchy, signatures, annotations and constant values are kept, so references to the class still resolve,
+	 * but the decompiler never allocates instructions for it.
+	 */
+	public static byte[] stripCode(byte[] bytes) {
+		ClassWriter writer = new ClassWriter(0);
+		new ClassReader(bytes).accept(writer, ClassReader.SKIP_CODE);
+		return writer.toByteArray();
+	}
+
+	@Override
+	public byte[] getBytecode(String externalPath, String internalPath) throws IOException {
+		if (internalPath == null) {
+			File file = new File(externalPath);
+			return InterpreterUtil.getBytes(file);
+		} else if (inputJars.containsKey(externalPath)) {
+			byte[] bytes = get(internalPath);
+			// Same bytes as in the written jar, which worker JVMs read
+			if (inputJars.get(externalPath) && internalPath.endsWith(".class")) {
+				bytes = stripCode(bytes);
+			}
+			return bytes;
+		} else {
+			final byte[] bytes = this.openZips.get(externalPath).getBytes(internalPath);
+			if (bytes == null) {
+				throw new IOException("Entry not found: " + internalPath);
+			}
+			return bytes;
+		}
+	}
+
+	@Override
+	public void close() {
+		openZips.close();
+	}
+}
@@ -0,0 +1,204 @@
+package org.mcphackers.mcp.tools.fernflower;
+
+import java.util.List;
+import java.util.Map;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.InnerClassNode;
+import org.objectweb.asm.tree.MethodNode;
+
+/**
+ * Source containing only declarations of a class and its member classes.
+ * Used in place of decompiled source when a class couldn't be decompiled.
+ */
+public final class ClassStub {
+	public static final String MARKER = "$MCP-STUB$";
+
+	private final Map<String, byte[]> classes;
+	private final StringBuilder sb = new StringBuilder();
+
+	private ClassStub(Map<String, byte[]> classes) {
+		this.classes = classes;
+	}
+
+	/**
+	 * @param className internal name of the top level class
+	 * @param classes class bytes by entry name
+	 * @param reason why the class wasn't decompiled
+	 * @return source of the stub
+	 */
+	public static String create(String className, Map<String, byte[]> classes, String reason) {
+		ClassStub stub = new ClassStub(classes);
+		int slash = className.lastIndexOf('/');
+		if (slash != -1) {
+			stub.sb.append("package ").append(className.substring(0, slash).replace('/', '.')).append(";\n\n");
+		}
+		stub.sb.append("// ").append(MARKER).append(' ').append(reason).append('\n');
+		stub.appendClass(className, className.substring(slash + 1), -1, "");
+		return stub.sb.toString();
+	}
+
+	private static ClassNode readClass(byte[] bytes) {
+		ClassNode node = new ClassNode();
+		new ClassReader(bytes).accept(node, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+		return node;
+	}
+
+	private void appendClass(String className, String simpleName, int innerAccess, String indent) {
+		ClassNode node = readClass(classes.get(className + ".class"));
+		int access = innerAccess == -1 ? node.access : innerAccess;
+		boolean isInterface = (access & Opcodes.ACC_INTERFACE) != 0;
+		boolean isEnum = (access & Opcodes.ACC_ENUM) != 0;
+		// ACC_SUPER shares the flag with ACC_SYNCHRONIZED
+		int modifiers = access & ~Opcodes.ACC_SYNCHRONIZED;
+		if (isInterface) {
+			modifiers &= ~Opcodes.ACC_ABSTRACT;
+		}
+		if (isEnum) {
+			modifiers &= ~(Opcodes.ACC_FINAL | Opcodes.ACC_ABSTRACT);
+		}
+		sb.append(indent).append(getModifiers(modifiers));
+		if ((access & Opcodes.ACC_ANNOTATION) != 0) {
+			sb.append("@interface ");
+		} else if (isInterface) {
+			sb.append("interface ");
+		} else if (isEnum) {
+			sb.append("enum ");
+		} else {
+			sb.append("class ");
+		}
+		sb.append(simpleName);
+		if (!isInterface && !isEnum && node.superName != null && !node.superName.equals("java/lang/Object")) {
+			sb.append(" extends ").append(getTypeName(node.superName));
+		}
+		List<String> interfaces = node.interfaces;
+		if (!interfaces.isEmpty() && (access & Opcodes.ACC_ANNOTATION) == 0) {
+			sb.append(isInterface ? " extends " : " implements ");
+			for (int i = 0; i < interfaces.size(); i++) {
+				sb.append(i == 0 ? "" : ", ").append(getTypeName(interfaces.get(i)));
+			}
+		}
+		sb.append(" {\n");
+		String memberIndent = indent + "\t";
+		if (isEnum) {
+			boolean first = true;
+			for (FieldNode field : node.fields) {
+				if ((field.access & Opcodes.ACC_ENUM) != 0) {
+					sb.append(first ? memberIndent : ",\n" + memberIndent).append(field.name);
+					first = false;
+				}
+			}
+			sb.append(";\n");
+		}
+		for (FieldNode field : node.fields) {
+			if ((field.access & (Opcodes.ACC_SYNTHETIC | Opcodes.ACC_ENUM)) != 0) {
+				continue;
+			}
+			int fieldAccess = field.value == null ? field.access & ~Opcodes.ACC_FINAL : field.access;
+			sb.append(memberIndent).append(getModifiers(fieldAccess)).append(Type.getType(field.desc).getClassName().replace('$', '.')).append(' ').append(field.name);
+			if (field.value != null) {
+				sb.append(" = ").append(getLiteral(field.value, field.desc));
+			}
+			sb.append(";\n");
+		}
+		for (MethodNode method : node.methods) {
+			if ((method.access & (Opcodes.ACC_SYNTHETIC | Opcodes.ACC_BRIDGE)) != 0 || method.name.equals("<clinit>")) {
+				continue;
+			}
+			// Enum constructors take name and ordinal, enum constants are declared without arguments
+			if (isEnum && (method.name.equals("<init>") || (method.name.equals("values") || method.name.equals("valueOf")) && (method.access & Opcodes.ACC_STATIC) != 0)) {
+				continue;
+			}
+			appendMethod(method, simpleName, memberIndent);
+		}
+		for (InnerClassNode innerClass : node.innerClasses) {
+			if (className.equals(innerClass.outerName) && innerClass.innerName != null && classes.containsKey(innerClass.name + ".class")) {
+				appendClass(innerClass.name, innerClass.innerName, innerClass.access, memberIndent);
+			}
+		}
+		sb.append(indent).append("}\n");
+	}
+
+	private void appendMethod(MethodNode method, String simpleName, String indent) {
+		boolean constructor = method.name.equals("<init>");
+		int access = method.access & ~(Opcodes.ACC_VARARGS | Opcodes.ACC_STRICT);
+		sb.append(indent).append(getModifiers(access));
+		if (constructor) {
+			sb.append(simpleName);
+		} else {
+			sb.append(Type.getReturnType(method.desc).getClassName().replace('$', '.')).append(' ').append(method.name);
+		}
+		sb.append('(');
+		Type[] arguments = Type.getArgumentTypes(method.desc);
+		for (int i = 0; i < arguments.length; i++) {
+			sb.append(i == 0 ? "" : ", ").append(arguments[i].getClassName().replace('$', '.')).append(" arg").append(i);
+		}
+		sb.append(')');
+		if (method.exceptions != null && !method.exceptions.isEmpty()) {
+			sb.append(" throws ");
+			for (int i = 0; i < method.exceptions.size(); i++) {
+				sb.append(i == 0 ? "" : ", ").append(getTypeName(method.exceptions.get(i)));
+			}
+		}
+		if ((access & (Opcodes.ACC_ABSTRACT | Opcodes.ACC_NATIVE)) != 0) {
+			sb.append(";\n");
+		} else {
+			sb.append(" {\n").append(indent).append("\tthrow new RuntimeException(\"").append(MARKER).append("\");\n").append(indent).append("}\n");
+		}
+	}
+
+	private static String getModifiers(int access) {
+		StringBuilder modifiers = new StringBuilder();
+		if ((access & Opcodes.ACC_PUBLIC) != 0) modifiers.append("public ");
+		if ((access & Opcodes.ACC_PRIVATE) != 0) modifiers.append("private ");
+		if ((access & Opcodes.ACC_PROTECTED) != 0) modifiers.append("protected ");
+		if ((access & Opcodes.ACC_ABSTRACT) != 0) modifiers.append("abstract ");
+		if ((access & Opcodes.ACC_STATIC) != 0) modifiers.append("static ");
+		if ((access & Opcodes.ACC_FINAL) != 0) modifiers.append("final ");
+		if ((access & Opcodes.ACC_SYNCHRONIZED) != 0) modifiers.append("synchronized ");
+		if ((access & Opcodes.ACC_NATIVE) != 0) modifiers.append("native ");
+		return modifiers.toString();
+	}
+
+	private static String getTypeName(String internalName) {
+		return internalName.replace('/', '.').replace('$', '.');
+	}
+
+	private static String getLiteral(Object value, String desc) {
+		if (value instanceof String) {
+			StringBuilder literal = new StringBuilder("\"");
+			for (char c : ((String) value).toCharArray()) {
+				if (c == '"' || c == '\\') {
+					literal.append('\\').append(c);
+				} else if (c < 0x20 || c > 0x7E) {
+					literal.append(String.format("\\u%04x", (int) c));
+				} else {
+					literal.append(c);
+				}
+			}
+			return literal.append('"').toString();
+		}
+		switch (desc) {
+			case "Z":
+				return ((Integer) value) != 0 ? "true" : "false";
+			case "C":
+				return "(char)" + value;
+			case "B":
+				return "(byte)" + value;
+			case "S":
+				return "(short)" + value;
+			case "J":
+				return value + "L";
+			case "F":
+				return ((Float) value).isNaN() ? "Float.NaN" : ((Float) value).isInfinite() ? (((Float) value) > 0 ? "Float.POSITIVE_INFINITY" : "Float.NEGATIVE_INFINITY") : value + "F";
+			case "D":
+				return ((Double) value).isNaN() ? "Double.NaN" : ((Double) value).isInfinite() ? (((Double) value) > 0 ? "Double.POSITIVE_INFINITY" : "Double.NEGATIVE_INFINITY") : value + "D";
+			default:
+				return String.valueOf(value);
+		}
+	}
+}
@@ -0,0 +1,143 @@
+package org.mcphackers.mcp.tools.fernflower;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.mcphackers.mcp.tools.Util;
+
+/**
+ * Decompiled sources from the previous run, keyed by a hash of the class bytecode and decompiler options.
+ * Every run writes a new cache with only the entries it used, so stale sources don't accumulate.
+ * Caches of other sides can be searched as well, so classes which are identical between sides are only decompiled once.
+ */
+public class DecompileCache implements AutoCloseable {
+	private final Path path;
+	private final Path tempPath;
+	private final ZipFile previous;
+	private final List<ZipFile> shared = new ArrayList<>();
+	private final ZipOutputStream out;
+	private final Set<String> written = new HashSet<>();
+	private boolean committed;
+	private boolean retainUnused;
+
+	/**
+	 * @param path cache of this side
+	 * @param sharedPaths caches of other sides to search for entries missing from this cache
+	 */
+	public DecompileCache(Path path, List<Path> sharedPaths) throws IOException {
+		this.path = path;
+		Files.createDirectories(path.getParent());
+		// Unique name so that other sides can write the same cache concurrently
+		this.tempPath = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+		this.previous = open(path);
+		for (Path sharedPath : sharedPaths) {
+			ZipFile zip = open(sharedPath);
+			if (zip != null) {
+				shared.add(zip);
+			}
+		}
+		this.out = new ZipOutputStream(Files.newOutputStream(tempPath));
+	}
+
+	private static ZipFile open(Path path) {
+		if (Files.exists(path)) {
+			try {
+				return new ZipFile(path.toFile());
+			} catch (IOException ignored) {
+				// Corrupted cache, start over
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @param key hash of the class group
+	 * @return cached source or <code>null</code> if there is none
+	 */
+	public byte[] get(String key) throws IOException {
+		if (previous != null) {
+			ZipEntry entry = previous.getEntry(key);
+			if (entry != null) {
+				return Util.readAllBytes(previous.getInputStream(entry));
+			}
+		}
+		for (ZipFile zip : shared) {
+			ZipEntry entry = zip.getEntry(key);
+			if (entry != null) {
+				return Util.readAllBytes(zip.getInputStream(entry));
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Closes caches of other sides once all entries were looked up, so that other sides can replace them
+	 */
+	public void releaseShared() throws IOException {
+		for (ZipFile zip : shared) {
+			zip.close();
+		}
+		shared.clear();
+	}
+
+	public synchronized void put(String key, byte[] source) throws IOException {
+		if (!written.add(key)) {
+			return;
+		}
+		out.putNextEntry(new ZipEntry(key));
+		out.write(source);
+		out.closeEntry();
+	}
+
+	/**
+	 * Keeps entries of the previous cache which weren't used during this run, for runs which only decompile some classes
+	 */
+	public void retainUnused() {
+		retainUnused = true;
+	}
+
+	/**
+	 * Replaces the previous cache with entries put during this run
+	 */
+	public void commit() throws IOException {
+		if (retainUnused && previous != null) {
+			Enumeration<? extends ZipEntry> previousEntries = previous.entries();
+			while (previousEntries.hasMoreElements()) {
+				ZipEntry entry = previousEntries.nextElement();
+				if (!written.contains(entry.getName())) {
+					put(entry.getName(), Util.readAllBytes(previous.getInputStream(entry)));
+				}
+			}
+		}
+		committed = true;
+	}
+
+	@Override
+	public void close() throws IOException {
+		out.close();
+		if (previous != null) {
+			previous.close();
+		}
+		releaseShared();
+		if (committed) {
+			try {
+				Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING);
+			} catch (IOException e) {
+				// Another side may still be reading this cache, keep the previous one
+				Files.deleteIfExists(tempPath);
+			}
+		} else {
+			Files.deleteIfExists(tempPath);
+		}
+	}
+}
@@ -4,13 +4,50 @@ import de.fernflower.main.extern.IFernflowerLogger;
 import org.mcphackers.mcp.MCP;
 import org.mcphackers.mcp.tasks.ProgressListener;
 
+import java.util.function.Consumer;
+
 public class DecompileLogger extends IFernflowerLogger {
 
 	private final ProgressListener listener;
+	private final DecompileLogger parent;
+	private final Consumer<String> classListener;
+	private final Consumer<String> errorListener;
+	private final DecompileProfile profile;
 	private int total;
 
 	public DecompileLogger(ProgressListener listener) {
 		this.listener = listener;
+		this.parent = null;
+		this.classListener = null;
+		this.errorListener = null;
+		this.profile = new DecompileProfile();
+	}
+
+	private DecompileLogger(DecompileLogger parent, Consumer<String> classListener, Consumer<String> errorListener) {
+		this.listener = parent.listener;
+		this.parent = parent;
+		this.classListener = classListener;
+		this.errorListener = errorListener;
+		this.profile = parent.profile;
+	}
+
+	/**
+	 * Creates a logger for a decompile context running in parallel.
+	 * Progress of parallel contexts is reported with {@link #updateProgress(int, int)} instead of save progress.
+	 *
+	 * @param classListener receives the name of every class the context starts processing
+	 * @param errorListener receives errors reported by the decompiler
+	 * @return logger for the context
+	 */
+	public DecompileLogger createChild(Consumer<String> classListener, Consumer<String> errorListener) {
+		return new DecompileLogger(this, classListener, errorListener);
+	}
+
+	/**
+	 * @return profile shared by this logger and its children
+	 */
+	public DecompileProfile getProfile() {
+		return profile;
 	}
 
 	@Override
@@ -18,14 +55,24 @@ public class DecompileLogger extends IFernflowerLogger {
 		if(severity.ordinal() >= Severity.WARN.ordinal()) {
 //			System.out.println(message);
 		}
+		if (severity == Severity.ERROR && errorListener != null) {
+			errorListener.accept(message);
+		}
     }
 
 	@Override
 	public void writeMessage(String message, Throwable t) {
+		if (errorListener != null) {
+			errorListener.accept(message + ": " + t);
+		}
 	}
 
 	@Override
 	public void startReadingClass(String className) {
+		if (classListener != null) {
+			classListener.accept(className);
+		}
+		profile.start(className);
 		listener.setProgress(MCP.TRANSLATOR.translateKey("task.stage.decompile") + " " + className);
 	}
 
@@ -36,6 +83,13 @@ public class DecompileLogger extends IFernflowerLogger {
 
 	@Override
 	public void updateSave(int current) {
+		if (parent != null) {
+			return;
+		}
+		updateProgress(current, total);
+	}
+
+	public void updateProgress(int current, int total) {
 		listener.setProgress((int) ((double) current / (double) total * 100));
 	}
 
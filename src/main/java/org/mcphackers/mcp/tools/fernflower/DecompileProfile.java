@@ -0,0 +1,172 @@
+package org.mcphackers.mcp.tools.fernflower;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Records time spent on each class from the moment the decompiler starts processing it until its source is saved.
+ * Allocated bytes are recorded as well when the JVM supports per-thread allocation counters.
+ */
+public class DecompileProfile {
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+	private final ThreadLocal<Sample> current = new ThreadLocal<>();
+	private final List<Sample> samples = new ArrayList<>();
+	private final boolean measureAllocations;
+	private final long startTime = System.nanoTime();
+
+	public DecompileProfile() {
+		boolean supported = false;
+		if (THREADS instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+			supported = threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled();
+		}
+		this.measureAllocations = supported;
+	}
+
+	private long getAllocatedBytes() {
+		if (!measureAllocations) {
+			return -1;
+		}
+		return ((com.sun.management.ThreadMXBean) THREADS).getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * Starts measuring a class on the current thread
+	 *
+	 * @param className internal name of the class
+	 */
+	public void start(String className) {
+		current.set(new Sample(className, System.nanoTime(), getAllocatedBytes()));
+	}
+
+	/**
+	 * Finishes measuring the class started on the current thread
+	 *
+	 * @param options description of options used for the class or <code>null</code> for default options
+	 */
+	public void end(String options) {
+		Sample sample = current.get();
+		if (sample == null) {
+			return;
+		}
+		current.remove();
+		sample.time = System.nanoTime() - sample.time;
+		if (sample.allocated != -1) {
+			sample.allocated = getAllocatedBytes() - sample.allocated;
+		}
+		sample.options = options;
+		add(sample);
+	}
+
+	/**
+	 * Records a class which wasn't saved in the given time
+	 */
+	public void addTimeout(String className, long time, String options) {
+		Sample sample = new Sample(className, time, -1);
+		sample.options = options;
+		sample.timedOut = true;
+		add(sample);
+	}
+
+	private void add(Sample sample) {
+		synchronized (samples) {
+			samples.add(sample);
+		}
+	}
+
+	private List<Sample> getSorted() {
+		List<Sample> sorted;
+		synchronized (samples) {
+			sorted = new ArrayList<>(samples);
+		}
+		sorted.sort(Comparator.comparingLong((Sample sample) -> sample.time).reversed());
+		return sorted;
+	}
+
+	/**
+	 * @param count maximum amount of classes
+	 * @return descriptions of the slowest classes, slowest first
+	 */
+	public List<String> getSlowest(int count) {
+		List<String> slowest = new ArrayList<>();
+		for (Sample sample : getSorted()) {
+			if (slowest.size() >= count) {
+				break;
+			}
+			StringBuilder sb = new StringBuilder();
+			sb.append(String.format("%8d ms  ", sample.time / 1000000L)).append(sample.className);
+			if (sample.allocated != -1) {
+				sb.append(" (").append(sample.allocated / 1024L).append(" KiB allocated)");
+			}
+			if (sample.timedOut) {
+				sb.append(" [timed out]");
+			}
+			if (sample.options != null) {
+				sb.append(" [").append(sample.options).append(']');
+			}
+			slowest.add(sb.toString());
+		}
+		return slowest;
+	}
+
+	/**
+	 * Writes all samples, slowest first, together with the options used for decompiling
+	 */
+	public void write(Path file, Map<String, Object> options) throws IOException {
+		JSONArray classes = new JSONArray();
+		long total = 0;
+		for (Sample sample : getSorted()) {
+			JSONObject entry = new JSONObject();
+			entry.put("name", sample.className);
+			entry.put("time", sample.time / 1000000D);
+			if (sample.allocated != -1) {
+				entry.put("allocated", sample.allocated);
+			}
+			if (sample.timedOut) {
+				entry.put("timedOut", true);
+			}
+			if (sample.options != null) {
+				entry.put("options", sample.options);
+			}
+			classes.put(entry);
+			total += sample.time;
+		}
+		JSONObject json = new JSONObject();
+		json.put("wallTime", (System.nanoTime() - startTime) / 1000000D);
+		json.put("classTime", total / 1000000D);
+		json.put("options", new JSONObject(new TreeMap<>(options)));
+		json.put("classes", classes);
+		Files.createDirectories(file.getParent());
+		try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			json.write(writer, 1, 0);
+		}
+	}
+
+	private static final class Sample {
+		private final String className;
+		private long time;
+		private long allocated;
+		private String options;
+		private boolean timedOut;
+
+		private Sample(String className, long time, long allocated) {
+			this.className = className;
+			this.time = time;
+			this.allocated = allocated;
+		}
+	}
+}
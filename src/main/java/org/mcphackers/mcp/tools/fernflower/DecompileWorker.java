@@ -0,0 +1,247 @@
+package org.mcphackers.mcp.tools.fernflower;
+
+import de.fernflower.main.decompiler.BaseDecompiler;
+import de.fernflower.main.extern.IBytecodeProvider;
+import de.fernflower.main.extern.IFernflowerLogger;
+import de.fernflower.main.extern.IResultSaver;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.jar.Manifest;
+
+/**
+ * Entry point of a child JVM decompiling one segment of classes, so that Fernflower's class structures don't live on the main heap.
+ * Arguments are a properties file with decompiler options, the jar to decompile and any number of library jars.
+ * The properties may also point to a {@link JavadocIndex} to read javadocs from, the worker fails if it can't read that exact index.
+ * Progress, decompiler messages and decompiled sources are written to standard output as a stream of records,
+ * everything else printed is redirected to standard error.
+ */
+public final class DecompileWorker {
+	static final int END = 0;
+	static final int CLASS = 1;
+	static final int SOURCE = 2;
+	static final int MESSAGE = 3;
+	static final int ERROR = 4;
+	/**
+	 * Property with the path to the javadoc index, not passed to Fernflower
+	 */
+	static final String JAVADOC_INDEX = "mcp.javadocs";
+	/**
+	 * Property with the hash of the mappings the javadoc index must be built from, not passed to Fernflower
+	 */
+	static final String JAVADOC_HASH = "mcp.javadocs.hash";
+
+	private final DataOutputStream out;
+
+	private DecompileWorker(DataOutputStream out) {
+		this.out = out;
+	}
+
+	public static void main(String[] args) throws IOException {
+		PrintStream stdout = System.out;
+		System.setOut(System.err);
+		DecompileWorker worker = new DecompileWorker(new DataOutputStream(new BufferedOutputStream(stdout)));
+		Properties properties = new Properties();
+		try (Reader reader = Files.newBufferedReader(Paths.get(args[0]), StandardCharsets.UTF_8)) {
+			properties.load(reader);
+		}
+		String javadocIndex = (String) properties.remove(JAVADOC_INDEX);
+		String javadocHash = (String) properties.remove(JAVADOC_HASH);
+		JavadocIndex javadocs = null;
+		if (javadocIndex != null) {
+			// Sources are cached by the hash of the index the main process loaded, so a different or missing index must not be used
+			javadocs = JavadocIndex.read(Paths.get(javadocIndex));
+			if (javadocs == null || !javadocs.getHash().equals(javadocHash)) {
+				throw new IOException("Couldn't read javadoc index " + javadocIndex);
+			}
+		}
+		Map<String, Object> options = new HashMap<>();
+		for (String key : properties.stringPropertyNames()) {
+			options.put(key, properties.getProperty(key));
+		}
+		try (ZipFileCache zips = new ZipFileCache()) {
+			IBytecodeProvider provider = (externalPath, internalPath) -> zips.get(externalPath).getBytes(internalPath);
+			BaseDecompiler decompiler = new BaseDecompiler(provider, worker.new Saver(), options, worker.new Logger(), javadocs);
+			for (int i = 2; i < args.length; i++) {
+				decompiler.addSpace(new File(args[i]), false);
+			}
+			decompiler.addSpace(new File(args[1]), true);
+			decompiler.decompileContext();
+		}
+		worker.write(END, null, null);
+	}
+
+	private synchronized void write(int type, String name, String content) {
+		write(type, -1, name, content);
+	}
+
+	/**
+	 * @param severity severity of a message record, not written if negative
+	 */
+	private synchronized void write(int type, int severity, String name, String content) {
+		try {
+			out.writeByte(type);
+			if (severity >= 0) {
+				out.writeByte(severity);
+			}
+			if (name != null) {
+				out.writeUTF(name);
+			}
+			if (content != null) {
+				byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+				out.writeInt(bytes.length);
+				out.write(bytes);
+			}
+			out.flush();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Reads records written by a worker until the end record
+	 *
+	 * @param in standard output of the worker
+	 * @param logger receives classes the worker starts decompiling and decompiler messages
+	 * @param saver receives decompiled sources
+	 */
+	static void read(InputStream in, DecompileLogger logger, IResultSaver saver) throws IOException {
+		DataInputStream data = new DataInputStream(in);
+		while (true) {
+			int type;
+			try {
+				type = data.readByte();
+			} catch (EOFException e) {
+				throw new IOException("Decompile worker exited unexpectedly");
+			}
+			switch (type) {
+				case END:
+					return;
+				case CLASS:
+					logger.startReadingClass(data.readUTF());
+					break;
+				case SOURCE:
+					String entryName = data.readUTF();
+					byte[] bytes = new byte[data.readInt()];
+					data.readFully(bytes);
+					saver.saveClassEntry(null, null, null, entryName, new String(bytes, StandardCharsets.UTF_8));
+					break;
+				case MESSAGE:
+					IFernflowerLogger.Severity severity = IFernflowerLogger.Severity.values()[data.readByte()];
+					logger.writeMessage(data.readUTF(), severity);
+					break;
+				case ERROR:
+					String message = data.readUTF();
+					byte[] stackTrace = new byte[data.readInt()];
+					data.readFully(stackTrace);
+					logger.writeMessage(message, new WorkerException(new String(stackTrace, StandardCharsets.UTF_8)));
+					break;
+				default:
+					throw new IOException("Invalid record from decompile worker: " + type);
+			}
+		}
+	}
+
+	/**
+	 * Exception thrown in a worker, with the stack trace printed by the worker
+	 */
+	static final class WorkerException extends Exception {
+		private final String stackTrace;
+
+		private WorkerException(String stackTrace) {
+			// The first line of a stack trace describes the exception
+			super(stackTrace.split("\\R", 2)[0], null, false, false);
+			this.stackTrace = stackTrace;
+		}
+
+		@Override
+		public String toString() {
+			return getMessage();
+		}
+
+		@Override
+		public void printStackTrace(PrintStream s) {
+			s.print(stackTrace);
+		}
+
+		@Override
+		public void printStackTrace(PrintWriter s) {
+			s.print(stackTrace);
+		}
+	}
+
+	private class Logger extends IFernflowerLogger {
+		@Override
+		public void writeMessage(String message, Severity severity) {
+			write(MESSAGE, severity.ordinal(), String.valueOf(message), null);
+		}
+
+		@Override
+		public void writeMessage(String message, Throwable t) {
+			StringWriter stackTrace = new StringWriter();
+			t.printStackTrace(new PrintWriter(stackTrace));
+			write(ERROR, String.valueOf(message), stackTrace.toString());
+		}
+
+		@Override
+		public void startReadingClass(String className) {
+			write(CLASS, className, null);
+		}
+	}
+
+	private class Saver implements IResultSaver {
+		@Override
+		public void saveFolder(String path) {
+		}
+
+		@Override
+		public void copyFile(String source, String path, String entryName) {
+		}
+
+		@Override
+		public void saveClassFile(String path, String qualifiedName, String entryName, String content, int[] mapping) {
+			if (content != null) {
+				write(SOURCE, entryName, content);
+			}
+		}
+
+		@Override
+		public void createArchive(String path, String archiveName, Manifest manifest) {
+		}
+
+		@Override
+		public void saveDirEntry(String path, String archiveName, String entryName) {
+		}
+
+		@Override
+		public void copyEntry(String source, String path, String archiveName, String entry) {
+		}
+
+		@Override
+		public void saveClassEntry(String path, String archiveName, String qualifiedName, String entryName, String content) {
+			if (content != null) {
+				write(SOURCE, entryName, content);
+			}
+		}
+
+		@Override
+		public void closeArchive(String path, String archiveName) {
+		}
+	}
+}
@@ -1,63 +1,458 @@
 package org.mcphackers.mcp.tools.fernflower;
 
 import de.fernflower.main.decompiler.BaseDecompiler;
-import de.fernflower.main.decompiler.DirectoryResultSaver;
-import de.fernflower.main.extern.IBytecodeProvider;
 import de.fernflower.main.extern.IFernflowerPreferences;
-import de.fernflower.util.InterpreterUtil;
 import org.mcphackers.mcp.MCP;
+import org.mcphackers.mcp.MCPPaths;
 import org.mcphackers.mcp.tasks.ProgressListener;
 import org.mcphackers.mcp.tasks.mode.TaskParameter;
+import org.mcphackers.mcp.tools.Archive;
+import org.mcphackers.mcp.tools.source.SourceSaver;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Opcodes;
 
-import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
+import java.util.Set;
+import java.util.TreeMap;
 
-public class Decompiler implements IBytecodeProvider {
+/**
+ * Decompiles the source jar with Fernflower.
+ * Classes are split into groups of top level classes with their inner classes. Groups are restored from the {@link GroupCache}
+ * and the rest are decompiled by a {@link ShardScheduler}, in this JVM or in worker JVMs started by a {@link WorkerLauncher}.
+ */
+public class Decompiler {
 	public final DecompileLogger log;
 	private final Path source;
 	private final List<Path> libraries;
 	private final Path destination;
 	private final Map<String, Object> mapOptions;
-	private final ZipFileCache openZips = new ZipFileCache();
+	private final int threads;
+	/**
+	 * Amount of child JVMs decompiling in parallel, 0 to decompile in this JVM
+	 */
+	private final int workers;
+	/**
+	 * Heap available for decompiling in megabytes, 0 to decompile all classes at once
+	 */
+	private final int heapBudget;
+	private final String[] workerArgs;
+	private final Path cache;
+	private final Path libraryIndex;
+	private final Path mappings;
+	private final Path javadocIndex;
+	private JavadocIndex javadocs;
+	private SourceSaver saver;
+	/**
+	 * Time budget of a class in worker JVMs in seconds, 0 for no limit
+	 */
+	private final int timeout;
+	private final List<String> warnings = new ArrayList<>();
+	private List<Path> sharedCaches = Collections.emptyList();
+	private Set<String> requestedClasses;
+	private Path baseCache;
+	private Set<String> baseClasses = Collections.emptySet();
+	private int cacheHits;
+	private int groupCount;
+	private String[] ignoredPackages = new String[0];
+	private boolean saveResources = true;
+	private Archive classes;
+	private ClassEntries entries;
 
 	public Decompiler(ProgressListener listener, Path source, Path out, List<Path> libs, MCP mcp) {
+		this(listener, source, out, libs, mcp, null);
+	}
+
+	/**
+	 * @param cache path to the decompile cache or <code>null</code> to always decompile every class
+	 */
+	public Decompiler(ProgressListener listener, Path source, Path out, List<Path> libs, MCP mcp, Path cache) {
 		this.source = source;
+		this.cache = cache;
+		this.libraryIndex = MCPPaths.get(mcp, MCPPaths.LIBRARY_INDEX);
+		this.mappings = MCPPaths.get(mcp, MCPPaths.MAPPINGS);
+		this.javadocIndex = MCPPaths.get(mcp, MCPPaths.JAVADOC_INDEX);
 		this.libraries = libs;
 		this.destination = out;
+		this.saver = new SourceSaver(out);
 		this.log = new DecompileLogger(listener);
         this.mapOptions = mcp.getOptions().getFernflowerOptions();
 		this.mapOptions.put(IFernflowerPreferences.REMOVE_BRIDGE, mcp.getOptions().getBooleanParameter(TaskParameter.GUESS_GENERICS) ? "1" : "0");
+		int threadCount = mcp.getOptions().getIntParameter(TaskParameter.DECOMPILE_THREADS);
+		this.threads = threadCount <= 0 ? Runtime.getRuntime().availableProcessors() : threadCount;
+		this.workers = Math.max(0, mcp.getOptions().getIntParameter(TaskParameter.DECOMPILE_WORKERS));
+		// Only worker JVMs can be destroyed when a class exceeds the time budget, contexts in this JVM would keep running once abandoned
+		this.timeout = workers > 0 ? Math.max(0, mcp.getOptions().getIntParameter(TaskParameter.DECOMPILE_TIMEOUT)) : 0;
+		this.workerArgs = mcp.getOptions().getStringArrayParameter(TaskParameter.DECOMPILE_WORKER_ARGS);
+		this.heapBudget = Math.max(0, mcp.getOptions().getIntParameter(TaskParameter.DECOMPILE_HEAP_BUDGET));
+	}
+
+	/**
+	 * @param saver receives decompiled sources and resources instead of writing them to the destination directory
+	 */
+	public void setSaver(SourceSaver saver) {
+		this.saver = saver;
+	}
+
+	/**
+	 * Classes are read from <code>classes</code> instead of the source jar, which may not be written yet.
+	 * Segments of the classes are written to jars for decompile contexts, the source jar itself is never read.
+	 *
+	 * @param classes classes and resources of the source jar
+	 */
+	public void setClasses(Archive classes) {
+		this.classes = classes;
+	}
+
+	/**
+	 * @param ignoredPackages packages which are only used as context and are not decompiled
+	 * @param saveResources whether non-class entries are passed to the saver
+	 */
+	public void setFilter(String[] ignoredPackages, boolean saveResources) {
+		this.ignoredPackages = ignoredPackages;
+		this.saveResources = saveResources;
+	}
+
+	/**
+	 * Stores sources of class groups which are unchanged from a base jar in the cache of that jar, in addition to the own cache.
+	 * The base cache is also searched, so modified jars share every unchanged class with the jar they're based on.
+	 *
+	 * @param baseCache decompile cache of the base jar
+	 * @param baseClasses internal names of remapped classes identical to the base jar
+	 */
+	public void setBaseCache(Path baseCache, Set<String> baseClasses) {
+		this.baseCache = baseCache;
+		this.baseClasses = baseClasses;
+		if (!sharedCaches.contains(baseCache)) {
+			List<Path> caches = new ArrayList<>();
+			caches.add(baseCache);
+			caches.addAll(sharedCaches);
+			sharedCaches = caches;
+		}
+	}
+
+	/**
+	 * @return amount of class groups restored from the cache and amount of decompiled class groups
+	 */
+	public int[] getCacheStats() {
+		return new int[]{cacheHits, groupCount - cacheHits};
+	}
+
+	/**
+	 * Only decompiles the given classes, all other classes are used as context and resources aren't saved
+	 *
+	 * @param classNames internal or fully qualified names of classes
+	 */
+	public void setRequestedClasses(String[] classNames) {
+		requestedClasses = new HashSet<>();
+		for (String className : classNames) {
+			if (className.endsWith(".java") || className.endsWith(".class")) {
+				className = className.substring(0, className.lastIndexOf('.'));
+			}
+			requestedClasses.add(className.replace('.', '/'));
+		}
+	}
+
+	/**
+	 * Sources of class groups missing from the cache are looked up in these caches before decompiling.
+	 * The cache key only depends on class bytecode and options, so classes identical between sides are shared.
+	 *
+	 * @param sharedCaches decompile caches of other sides
+	 */
+	public void setSharedCaches(List<Path> sharedCaches) {
+		this.sharedCaches = sharedCaches;
 	}
 
 	public void decompile() throws IOException {
-		BaseDecompiler decompiler = new BaseDecompiler(this, new DirectoryResultSaver(destination.toFile()), mapOptions, log/*, javadocs.exists() ? new TinyJavadocProvider(javadocs) : null*/);
+		javadocs = JavadocIndex.load(mappings, javadocIndex);
+		try (ClassEntries classEntries = classes != null ? new ClassEntries(classes) : new ClassEntries(source)) {
+			entries = classEntries;
+			if (cache != null) {
+				try (GroupCache groupCache = new GroupCache(cache, sharedCaches, baseCache, mapOptions, javadocs)) {
+					if (requestedClasses != null) {
+						groupCache.retainUnused();
+					}
+					decompileGroups(groupCache);
+					groupCache.commit();
+				}
+			} else if (threads > 1 || workers > 0 || heapBudget > 0 || ignoredPackages.length > 0 || !saveResources || requestedClasses != null || classes != null) {
+				decompileGroups(null);
+			} else {
+				BaseDecompiler decompiler = new BaseDecompiler(entries, new ResultSaver(saver, null, log.getProfile(), entries, null), mapOptions, log, javadocs);
+				addLibraries(decompiler);
+				decompiler.addSpace(source.toAbsolutePath().toFile(), true);
+				decompiler.decompileContext();
+			}
+		} finally {
+			entries = null;
+		}
+	}
+
+	private void addLibraries(BaseDecompiler decompiler) {
 		for (Path lib : libraries) {
 			if (Files.exists(lib))
 				decompiler.addSpace(lib.toAbsolutePath().toFile(), false);
 		}
-		decompiler.addSpace(source.toAbsolutePath().toFile(), true);
-		decompiler.decompileContext();
-		this.openZips.close();
 	}
 
-	@Override
-	public byte[] getBytecode(String externalPath, String internalPath) throws IOException {
-		if (internalPath == null) {
-			File file = new File(externalPath);
-			return InterpreterUtil.getBytes(file);
-		} else {
-			final ZipFile archive = this.openZips.get(externalPath);
-			final ZipEntry entry = archive.getEntry(internalPath);
-			if (entry == null) {
-				throw new IOException("Entry not found: " + internalPath);
+	/**
+	 * Splits the source jar into groups of top level classes with their inner classes.
+	 * Groups found in the cache are restored, the rest are distributed over shards which are decompiled in parallel.
+	 */
+	private void decompileGroups(GroupCache cache) throws IOException {
+		Map<String, List<String>> groups = requestedClasses != null ? readRequestedGroups() : readGroups();
+		if (saveResources && requestedClasses == null) {
+			for (String name : entries.getNames()) {
+				if (!name.endsWith("/") && !name.endsWith(".class")) {
+					saver.saveResource(name, entries.get(name));
+				}
+			}
+		}
+		LibraryIndex index = LibraryIndex.load(libraries, libraryIndex);
+		Map<String, List<String>> pending = new TreeMap<>();
+		Set<String> found = new HashSet<>();
+		cacheHits = 0;
+		groupCount = 0;
+		for (Map.Entry<String, List<String>> group : groups.entrySet()) {
+			if (requestedClasses != null && !isRequested(group.getValue(), found)) {
+				continue;
+			}
+			if (isIgnored(group.getKey())) {
+				continue;
+			}
+			groupCount++;
+			if (cache != null) {
+				byte[] source = cache.restore(group.getKey(), group.getValue(), isBase(group.getValue()), entries, index);
+				if (source != null) {
+					saver.saveSource(group.getKey() + ".java", new String(source, StandardCharsets.UTF_8));
+					cacheHits++;
+					continue;
+				}
+			}
+			pending.put(group.getKey(), group.getValue());
+		}
+		if (cache != null) {
+			cache.releaseShared();
+		}
+		if (requestedClasses != null) {
+			for (String className : requestedClasses) {
+				if (!found.contains(className)) {
+					addWarning("Class not found: " + className);
+				}
+			}
+		}
+		if (!pending.isEmpty()) {
+			List<String> context = new ArrayList<>();
+			List<String> libraryClasses;
+			if (requestedClasses != null) {
+				// Only classes the requested classes refer to are needed, the rest of the jar is never read
+				List<String> names = new ArrayList<>();
+				for (List<String> group : pending.values()) {
+					names.addAll(group);
+				}
+				context.addAll(entries.getReferencedClasses(names));
+				names.addAll(context);
+				libraryClasses = entries.addLibraryClasses(index, names);
+			} else {
+				for (Map.Entry<String, List<String>> group : groups.entrySet()) {
+					if (!pending.containsKey(group.getKey())) {
+						context.addAll(group.getValue());
+					}
+				}
+				libraryClasses = entries.addLibraryClasses(index);
+			}
+			ShardScheduler scheduler = new ShardScheduler(entries, saver, cache, log, mapOptions, javadocs, this::addWarning);
+			scheduler.setThreads(threads);
+			scheduler.setWorkers(workers, workers > 0 ? new WorkerLauncher(workerArgs, javadocIndex, javadocs) : null);
+			scheduler.setHeapBudget(heapBudget);
+			scheduler.setTimeout(timeout);
+			scheduler.run(destination.toAbsolutePath().getParent(), pending, context, libraryClasses);
+		}
+	}
+
+	private boolean isBase(List<String> group) {
+		if (baseClasses.isEmpty()) {
+			return false;
+		}
+		for (String name : group) {
+			if (!baseClasses.contains(getClassName(name))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean isRequested(List<String> group, Set<String> found) {
+		boolean requested = false;
+		for (String name : group) {
+			String className = getClassName(name);
+			if (requestedClasses.contains(className)) {
+				found.add(className);
+				requested = true;
 			}
-			return InterpreterUtil.getBytes(archive, entry);
 		}
+		return requested;
+	}
+
+	private Map<String, List<String>> readGroups() throws IOException {
+		Map<String, String> enclosingClasses = new HashMap<>();
+		for (String name : entries.getNames()) {
+			if (name.endsWith(".class")) {
+				enclosingClasses.put(getClassName(name), getEnclosingClass(entries.get(name)));
+			}
+		}
+		Map<String, List<String>> groups = new TreeMap<>();
+		for (String className : enclosingClasses.keySet()) {
+			groups.computeIfAbsent(getTopLevelClass(className, enclosingClasses), k -> new ArrayList<>()).add(className + ".class");
+		}
+		return groups;
+	}
+
+	/**
+	 * Groups of the requested classes, found without reading the other classes of the source jar.
+	 * A class declaring nested classes lists them in its inner classes attribute,
+	 * so the group is collected by following these attributes down from the top level class.
+	 */
+	private Map<String, List<String>> readRequestedGroups() throws IOException {
+		Map<String, List<String>> groups = new TreeMap<>();
+		for (String className : requestedClasses) {
+			if (entries.getSize(className + ".class") == -1) {
+				continue;
+			}
+			String topLevel = className;
+			Set<String> visited = new HashSet<>();
+			while (visited.add(topLevel)) {
+				String entryName = topLevel + ".class";
+				String enclosing = entries.getSize(entryName) == -1 ? null : getEnclosingClass(entries.get(entryName));
+				if (enclosing == null) {
+					break;
+				}
+				topLevel = enclosing;
+			}
+			if (groups.containsKey(topLevel)) {
+				continue;
+			}
+			List<String> group = new ArrayList<>();
+			Set<String> members = new HashSet<>();
+			Deque<String> queue = new ArrayDeque<>();
+			queue.add(topLevel);
+			while (!queue.isEmpty()) {
+				String member = queue.poll();
+				String entryName = member + ".class";
+				if (!members.add(member) || entries.getSize(entryName) == -1) {
+					continue;
+				}
+				group.add(entryName);
+				for (String nested : getInnerClasses(entries.get(entryName))) {
+					String nestedEntry = nested + ".class";
+					// Inner classes attributes also list nested classes which are only referenced, such as those of other classes
+					if (!members.contains(nested) && entries.getSize(nestedEntry) != -1 && member.equals(getEnclosingClass(entries.get(nestedEntry)))) {
+						queue.add(nested);
+					}
+				}
+			}
+			groups.put(topLevel, group);
+		}
+		return groups;
+	}
+
+	private boolean isIgnored(String className) {
+		Path path = Paths.get(className);
+		for (String ignoredPackage : ignoredPackages) {
+			if (path.startsWith(Paths.get(ignoredPackage))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void addWarning(String message) {
+		synchronized (warnings) {
+			warnings.add(message);
+		}
+	}
+
+	/**
+	 * Writes time spent on each class to a json file
+	 */
+	public void writeProfile(Path file) throws IOException {
+		log.getProfile().write(file, mapOptions);
+	}
+
+	/**
+	 * @return classes which exceeded the time budget or couldn't be decompiled and errors reported by the decompiler
+	 */
+	public List<String> getWarnings() {
+		synchronized (warnings) {
+			return new ArrayList<>(warnings);
+		}
+	}
+
+	private static String getClassName(String entryName) {
+		return entryName.substring(0, entryName.length() - 6);
+	}
+
+	private static String getTopLevelClass(String className, Map<String, String> enclosingClasses) {
+		String topLevel = className;
+		Set<String> visited = new HashSet<>();
+		String enclosing;
+		while ((enclosing = enclosingClasses.get(topLevel)) != null && visited.add(topLevel)) {
+			topLevel = enclosing;
+		}
+		return topLevel;
+	}
+
+	/**
+	 * @return names of all classes in the inner classes attribute of the class from <code>bytes</code>
+	 */
+	private static List<String> getInnerClasses(byte[] bytes) {
+		List<String> innerClasses = new ArrayList<>();
+		new ClassReader(bytes).accept(new ClassVisitor(Opcodes.ASM9) {
+			@Override
+			public void visitInnerClass(String name, String outerName, String innerName, int access) {
+				innerClasses.add(name);
+			}
+		}, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+		return innerClasses;
+	}
+
+	/**
+	 * @return name of the class which declares the class from <code>bytes</code> or null if it's a top level class
+	 */
+	private static String getEnclosingClass(byte[] bytes) {
+		String[] enclosing = new String[1];
+		new ClassReader(bytes).accept(new ClassVisitor(Opcodes.ASM9) {
+			private String className;
+
+			@Override
+			public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+				className = name;
+			}
+
+			@Override
+			public void visitOuterClass(String owner, String name, String descriptor) {
+				enclosing[0] = owner;
+			}
+
+			@Override
+			public void visitInnerClass(String name, String outerName, String innerName, int access) {
+				if (name.equals(className) && outerName != null) {
+					enclosing[0] = outerName;
+				}
+			}
+		}, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+		return enclosing[0];
 	}
 }
@@ -0,0 +1,163 @@
+package org.mcphackers.mcp.tools.fernflower;
+
+import de.fernflower.main.decompiler.BaseDecompiler;
+import org.mcphackers.mcp.MCP;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Restores and stores sources of class groups in the decompile cache.
+ * Keys are a hash of the MCP and decompiler versions, decompiler options, javadocs, the bytecode of every class in a group
+ * and the declarations of the source and library classes the group refers to.
+ * Sources of groups which are identical to a base jar are stored in the cache of that jar as well.
+ */
+public class GroupCache implements AutoCloseable {
+	/**
+	 * Version of the cached source format, bump whenever the Fernflower dependency or the way its output is saved changes
+	 */
+	private static final String CACHE_FORMAT = "fernflower-1.0.0/1";
+
+	private final DecompileCache cache;
+	private final DecompileCache baseCache;
+	private final byte[] header;
+	/**
+	 * Keys of groups which weren't found in the cache, by group name
+	 */
+	private final Map<String, String> keys = new ConcurrentHashMap<>();
+	private final Set<String> baseGroups = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * @param cache path to the decompile cache
+	 * @param sharedCaches decompile caches of other sides, searched when a group isn't in the own cache
+	 * @param baseCache decompile cache of the base jar or <code>null</code>
+	 */
+	public GroupCache(Path cache, List<Path> sharedCaches, Path baseCache, Map<String, Object> options, JavadocIndex javadocs) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		sb.append(MCP.VERSION).append('\n').append(CACHE_FORMAT).append('\n');
+		String decompilerVersion = BaseDecompiler.class.getPackage().getImplementationVersion();
+		if (decompilerVersion != null) {
+			sb.append(decompilerVersion);
+		}
+		sb.append('\n').append(new TreeMap<>(options));
+		if (javadocs != null) {
+			sb.append('\n').append(javadocs.getHash());
+		}
+		this.header = sb.toString().getBytes(StandardCharsets.UTF_8);
+		this.cache = new DecompileCache(cache, sharedCaches);
+		DecompileCache base = null;
+		try {
+			if (baseCache != null) {
+				base = new DecompileCache(baseCache, Collections.emptyList());
+				// Other jars based on the same jar use the rest of its entries
+				base.retainUnused();
+			}
+		} catch (IOException e) {
+			this.cache.close();
+			throw e;
+		}
+		this.baseCache = base;
+	}
+
+	/**
+	 * @see DecompileCache#retainUnused()
+	 */
+	public void retainUnused() {
+		cache.retainUnused();
+	}
+
+	/**
+	 * @param group name of the top level class
+	 * @param names entry names of the classes in the group
+	 * @param base whether the group is identical to the base jar
+	 * @param libraries index of the libraries referenced classes are looked up in
+	 * @return cached source of the group or <code>null</code> if it needs decompiling
+	 */
+	public byte[] restore(String group, List<String> names, boolean base, ClassEntries entries, LibraryIndex libraries) throws IOException {
+		String key = getKey(names, entries, libraries);
+		if (base && baseCache != null) {
+			baseGroups.add(group);
+		}
+		byte[] source = cache.get(key);
+		if (source != null) {
+			put(group, key, source);
+			return source;
+		}
+		keys.put(group, key);
+		return null;
+	}
+
+	/**
+	 * Stores the decompiled source of a group which wasn't restored
+	 */
+	public void store(String group, byte[] source) throws IOException {
+		String key = keys.get(group);
+		if (key != null) {
+			put(group, key, source);
+		}
+	}
+
+	private void put(String group, String key, byte[] source) throws IOException {
+		cache.put(key, source);
+		if (baseGroups.contains(group)) {
+			baseCache.put(key, source);
+		}
+	}
+
+	/**
+	 * @see DecompileCache#releaseShared()
+	 */
+	public void releaseShared() throws IOException {
+		cache.releaseShared();
+	}
+
+	public void commit() throws IOException {
+		cache.commit();
+		if (baseCache != null) {
+			baseCache.commit();
+		}
+	}
+
+	private String getKey(List<String> group, ClassEntries entries, LibraryIndex libraries) throws IOException {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			digest.update(header);
+			List<String> names = new ArrayList<>(group);
+			Collections.sort(names);
+			for (String name : names) {
+				digest.update(name.getBytes(StandardCharsets.UTF_8));
+				digest.update(entries.get(name));
+			}
+			// Changed declarations of other classes change how the group decompiles, such as inferred generics and casts
+			digest.update(entries.getContextDigest(group, libraries));
+			StringBuilder sb = new StringBuilder();
+			for (byte b : digest.digest()) {
+				sb.append(String.format("%02x", b & 0xff));
+			}
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			cache.close();
+		} finally {
+			if (baseCache != null) {
+				baseCache.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,298 @@
+package org.mcphackers.mcp.tools.fernflower;
+
+import de.fernflower.main.providers.IJavadocProvider;
+import de.fernflower.struct.StructClass;
+import de.fernflower.struct.StructField;
+import de.fernflower.struct.StructMethod;
+import net.fabricmc.mappingio.MappingReader;
+import net.fabricmc.mappingio.adapter.MappingSourceNsSwitch;
+import net.fabricmc.mappingio.tree.MappingTree;
+import net.fabricmc.mappingio.tree.MemoryMappingTree;
+import org.mcphackers.mcp.tools.Util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Javadocs from comments in tiny mappings.
+ * Names, descriptors and comments are deduplicated into one string table and members are sorted by owner, name and descriptor,
+ * so lookups are binary searches over int arrays. The index is stored on disk and only rebuilt when the mappings change.
+ */
+public final class JavadocIndex implements IJavadocProvider {
+	private static final int VERSION = 1;
+
+	private final String hash;
+	private final String[] strings;
+	private final Table classes;
+	private final Table fields;
+	private final Table methods;
+
+	private JavadocIndex(String hash, String[] strings, Table classes, Table fields, Table methods) {
+		this.hash = hash;
+		this.strings = strings;
+		this.classes = classes;
+		this.fields = fields;
+		this.methods = methods;
+	}
+
+	/**
+	 * @param mappings tiny mappings with comments
+	 * @param indexFile stored index
+	 * @return index or <code>null</code> if there are no mappings or the mappings have no comments
+	 */
+	public static JavadocIndex load(Path mappings, Path indexFile) throws IOException {
+		if (!Files.exists(mappings)) {
+			return null;
+		}
+		String hash = Util.getSHA1(mappings);
+		if (Files.exists(indexFile)) {
+			JavadocIndex index = read(indexFile);
+			if (index != null && index.hash.equals(hash)) {
+				return index.isEmpty() ? null : index;
+			}
+		}
+		JavadocIndex index = build(mappings, hash);
+		index.write(indexFile);
+		return index.isEmpty() ? null : index;
+	}
+
+	/**
+	 * @return stored index or <code>null</code> if it's missing or malformed
+	 */
+	static JavadocIndex read(Path indexFile) {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+			if (in.readInt() != VERSION) {
+				return null;
+			}
+			String hash = in.readUTF();
+			String[] strings = new String[in.readInt()];
+			for (int i = 0; i < strings.length; i++) {
+				byte[] bytes = new byte[in.readInt()];
+				in.readFully(bytes);
+				strings[i] = new String(bytes, StandardCharsets.UTF_8);
+			}
+			return new JavadocIndex(hash, strings, Table.read(in), Table.read(in), Table.read(in));
+		} catch (IOException | RuntimeException e) {
+			// Malformed index, rebuild it
+			return null;
+		}
+	}
+
+	private static JavadocIndex build(Path mappings, String hash) throws IOException {
+		MemoryMappingTree mappingTree = new MemoryMappingTree();
+		MappingReader.read(mappings, new MappingSourceNsSwitch(mappingTree, "named"));
+		Map<String, Integer> ids = new HashMap<>();
+		List<String> strings = new ArrayList<>();
+		List<int[]> classes = new ArrayList<>();
+		List<int[]> fields = new ArrayList<>();
+		List<int[]> methods = new ArrayList<>();
+		for (MappingTree.ClassMapping classMapping : mappingTree.getClasses()) {
+			int owner = -1;
+			if (classMapping.getComment() != null) {
+				owner = intern(classMapping.getSrcName(), ids, strings);
+				classes.add(new int[]{owner, -1, -1, intern(classMapping.getComment(), ids, strings)});
+			}
+			for (MappingTree.FieldMapping fieldMapping : classMapping.getFields()) {
+				if (fieldMapping.getComment() == null) {
+					continue;
+				}
+				owner = owner == -1 ? intern(classMapping.getSrcName(), ids, strings) : owner;
+				fields.add(new int[]{owner, intern(fieldMapping.getSrcName(), ids, strings), intern(fieldMapping.getSrcDesc(), ids, strings), intern(fieldMapping.getComment(), ids, strings)});
+			}
+			for (MappingTree.MethodMapping methodMapping : classMapping.getMethods()) {
+				String doc = getMethodDoc(methodMapping);
+				if (doc == null) {
+					continue;
+				}
+				owner = owner == -1 ? intern(classMapping.getSrcName(), ids, strings) : owner;
+				methods.add(new int[]{owner, intern(methodMapping.getSrcName(), ids, strings), intern(methodMapping.getSrcDesc(), ids, strings), intern(doc, ids, strings)});
+			}
+		}
+		String[] table = strings.toArray(new String[0]);
+		return new JavadocIndex(hash, table, Table.sorted(classes, table), Table.sorted(fields, table), Table.sorted(methods, table));
+	}
+
+	private static String getMethodDoc(MappingTree.MethodMapping methodMapping) {
+		List<String> parts = new ArrayList<>();
+		if (methodMapping.getComment() != null) {
+			parts.add(methodMapping.getComment());
+		}
+		boolean addedParam = false;
+		for (MappingTree.MethodArgMapping argMapping : methodMapping.getArgs()) {
+			String comment = argMapping.getComment();
+			if (comment == null || argMapping.getSrcName() == null) {
+				continue;
+			}
+			if (!addedParam && methodMapping.getComment() != null) {
+				// Add a blank line before params when the method has a comment
+				parts.add("");
+			}
+			addedParam = true;
+			parts.add("@param " + argMapping.getSrcName() + " " + comment);
+		}
+		return parts.isEmpty() ? null : String.join("\n", parts);
+	}
+
+	private static int intern(String s, Map<String, Integer> ids, List<String> strings) {
+		Integer id = ids.get(s);
+		if (id == null) {
+			id = strings.size();
+			ids.put(s, id);
+			strings.add(s);
+		}
+		return id;
+	}
+
+	private void write(Path indexFile) throws IOException {
+		Files.createDirectories(indexFile.getParent());
+		// Both sides may build the index at the same time, the index is replaced once it's complete
+		Path tempFile = Files.createTempFile(indexFile.getParent(), "javadocs", ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+			out.writeInt(VERSION);
+			out.writeUTF(hash);
+			out.writeInt(strings.length);
+			for (String s : strings) {
+				// Comments may exceed the length limit of writeUTF
+				byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+				out.writeInt(bytes.length);
+				out.write(bytes);
+			}
+			classes.write(out);
+			fields.write(out);
+			methods.write(out);
+		}
+		try {
+			Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			Files.deleteIfExists(tempFile);
+		}
+	}
+
+	private boolean isEmpty() {
+		return classes.size == 0 && fields.size == 0 && methods.size == 0;
+	}
+
+	/**
+	 * @return hash of the mappings the index was built from
+	 */
+	public String getHash() {
+		return hash;
+	}
+
+	@Override
+	public String getClassDoc(StructClass structClass) {
+		return classes.find(strings, structClass.qualifiedName, null, null);
+	}
+
+	@Override
+	public String getMethodDoc(StructClass structClass, StructMethod structMethod) {
+		return methods.find(strings, structClass.qualifiedName, structMethod.getName(), structMethod.getDescriptor());
+	}
+
+	@Override
+	public String getFieldDoc(StructClass structClass, StructField structField) {
+		return fields.find(strings, structClass.qualifiedName, structField.getName(), structField.getDescriptor());
+	}
+
+	/**
+	 * Entries sorted by owner, name and descriptor, stored as indices into the string table
+	 */
+	private static final class Table {
+		private final int size;
+		private final int[] owners;
+		private final int[] names;
+		private final int[] descs;
+		private final int[] docs;
+
+		private Table(int size) {
+			this.size = size;
+			this.owners = new int[size];
+			this.names = new int[size];
+			this.descs = new int[size];
+			this.docs = new int[size];
+		}
+
+		private static Table sorted(List<int[]> entries, String[] strings) {
+			Comparator<String> order = Comparator.nullsFirst(Comparator.naturalOrder());
+			entries.sort(Comparator.comparing((int[] entry) -> get(strings, entry[0]), order)
+					.thenComparing(entry -> get(strings, entry[1]), order)
+					.thenComparing(entry -> get(strings, entry[2]), order));
+			Table table = new Table(entries.size());
+			for (int i = 0; i < table.size; i++) {
+				int[] entry = entries.get(i);
+				table.owners[i] = entry[0];
+				table.names[i] = entry[1];
+				table.descs[i] = entry[2];
+				table.docs[i] = entry[3];
+			}
+			return table;
+		}
+
+		private static String get(String[] strings, int id) {
+			return id == -1 ? null : strings[id];
+		}
+
+		private static int compare(String a, String b) {
+			if (a == null || b == null) {
+				return a == null ? (b == null ? 0 : -1) : 1;
+			}
+			return a.compareTo(b);
+		}
+
+		private String find(String[] strings, String owner, String name, String desc) {
+			int low = 0;
+			int high = size - 1;
+			while (low <= high) {
+				int mid = (low + high) >>> 1;
+				int cmp = compare(get(strings, owners[mid]), owner);
+				if (cmp == 0) {
+					cmp = compare(get(strings, names[mid]), name);
+				}
+				if (cmp == 0) {
+					cmp = compare(get(strings, descs[mid]), desc);
+				}
+				if (cmp < 0) {
+					low = mid + 1;
+				} else if (cmp > 0) {
+					high = mid - 1;
+				} else {
+					return strings[docs[mid]];
+				}
+			}
+			return null;
+		}
+
+		private static Table read(DataInputStream in) throws IOException {
+			Table table = new Table(in.readInt());
+			for (int i = 0; i < table.size; i++) {
+				table.owners[i] = in.readInt();
+				table.names[i] = in.readInt();
+				table.descs[i] = in.readInt();
+				table.docs[i] = in.readInt();
+			}
+			return table;
+		}
+
+		private void write(DataOutputStream out) throws IOException {
+			out.writeInt(size);
+			for (int i = 0; i < size; i++) {
+				out.writeInt(owners[i]);
+				out.writeInt(names[i]);
+				out.writeInt(descs[i]);
+				out.writeInt(docs[i]);
+			}
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package org.mcphackers.mcp.tools.fernflower;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.mcphackers.mcp.tools.ZipIndex;
+
+/**
+ * Maps class names to the library jar that contains them.
+ * The index is stored in the workspace and only rebuilt when the set of libraries changes.
+ */
+public class LibraryIndex {
+	private final List<Path> libraries = new ArrayList<>();
+	private final Map<String, Path> classes = new HashMap<>();
+
+	private LibraryIndex() {
+	}
+
+	/**
+	 * @param libraries library jars, earlier jars take precedence for duplicate classes
+	 * @param indexFile stored index or <code>null</code> to always read the jars
+	 */
+	public static LibraryIndex load(List<Path> libraries, Path indexFile) throws IOException {
+		LibraryIndex index = new LibraryIndex();
+		List<String> fingerprint = new ArrayList<>();
+		for (Path library : libraries) {
+			if (Files.exists(library)) {
+				index.libraries.add(library);
+				fingerprint.add(library.toAbsolutePath() + "|" + Files.size(library) + "|" + Files.getLastModifiedTime(library).toMillis());
+			}
+		}
+		if (indexFile != null && Files.exists(indexFile) && index.read(indexFile, fingerprint)) {
+			return index;
+		}
+		for (Path library : index.libraries) {
+			try (ZipIndex zip = new ZipIndex(library)) {
+				for (String name : zip.getNames()) {
+					if (name.endsWith(".class")) {
+						index.classes.putIfAbsent(name.substring(0, name.length() - 6), library);
+					}
+				}
+			}
+		}
+		if (indexFile != null) {
+			index.write(indexFile, fingerprint);
+		}
+		return index;
+	}
+
+	private boolean read(Path indexFile, List<String> fingerprint) throws IOException {
+		try (BufferedReader reader = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8)) {
+			String line = reader.readLine();
+			if (line == null || Integer.parseInt(line) != fingerprint.size()) {
+				return false;
+			}
+			for (String library : fingerprint) {
+				if (!library.equals(reader.readLine())) {
+					return false;
+				}
+			}
+			// Class count guards against an index which was cut short
+			line = reader.readLine();
+			if (line == null) {
+				return false;
+			}
+			int count = Integer.parseInt(line);
+			while ((line = reader.readLine()) != null) {
+				int space = line.indexOf(' ');
+				classes.put(line.substring(space + 1), libraries.get(Integer.parseInt(line.substring(0, space))));
+			}
+			if (classes.size() != count) {
+				classes.clear();
+				return false;
+			}
+			return true;
+		} catch (RuntimeException e) {
+			// Malformed index, rebuild it
+			classes.clear();
+			return false;
+		}
+	}
+
+	private void write(Path indexFile, List<String> fingerprint) throws IOException {
+		Files.createDirectories(indexFile.getParent());
+		Map<Path, Integer> ids = new HashMap<>();
+		for (int i = 0; i < libraries.size(); i++) {
+			ids.put(libraries.get(i), i);
+		}
+		// Both sides may build the index at the same time, the index is replaced once it's complete
+		Path tempFile = Files.createTempFile(indexFile.getParent(), "libraries", ".tmp");
+		try (BufferedWriter writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+			writer.write(Integer.toString(fingerprint.size()));
+			writer.newLine();
+			for (String library : fingerprint) {
+				writer.write(library);
+				writer.newLine();
+			}
+			writer.write(Integer.toString(classes.size()));
+			writer.newLine();
+			for (Map.Entry<String, Path> entry : classes.entrySet()) {
+				writer.write(ids.get(entry.getValue()) + " " + entry.getKey());
+				writer.newLine();
+			}
+		}
+		try {
+			Files.move(tempFile, indexFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			Files.deleteIfExists(tempFile);
+		}
+	}
+
+	/**
+	 * @param className internal name of a class
+	 * @return library jar containing the class or <code>null</code>
+	 */
+	public Path getLibrary(String className) {
+		return classes.get(className);
+	}
+}
@@ -0,0 +1,103 @@
+package org.mcphackers.mcp.tools.fernflower;
+
+import de.fernflower.main.extern.IResultSaver;
+import org.mcphackers.mcp.tools.source.SourceSaver;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.jar.Manifest;
+
+/**
+ * Passes Fernflower output to the source saver and stores decompiled class groups in the cache
+ */
+class ResultSaver implements IResultSaver {
+	private final SourceSaver saver;
+	private final GroupCache cache;
+	private final DecompileProfile profile;
+	private final ClassEntries entries;
+	private final ShardScheduler.Job job;
+
+	/**
+	 * @param cache cache to store decompiled groups in or <code>null</code>
+	 * @param job context the output comes from or <code>null</code> if it's never abandoned
+	 */
+	ResultSaver(SourceSaver saver, GroupCache cache, DecompileProfile profile, ClassEntries entries, ShardScheduler.Job job) {
+		this.saver = saver;
+		this.cache = cache;
+		this.profile = profile;
+		this.entries = entries;
+		this.job = job;
+	}
+
+	private void saveSource(String entryName, String content) {
+		if (content == null) {
+			return;
+		}
+		String group = entryName.endsWith(".java") ? entryName.substring(0, entryName.length() - 5) : null;
+		// Output of abandoned contexts is discarded
+		if (job != null && !job.onSave(group)) {
+			return;
+		}
+		boolean fallback = job != null && job.isFallback();
+		profile.end(fallback ? ShardScheduler.FALLBACK_OPTIONS.toString() : null);
+		try {
+			saver.saveSource(entryName, content);
+			// Output decompiled with reduced options isn't cached so that it's retried on the next run
+			if (cache != null && group != null && !fallback) {
+				cache.store(group, content.getBytes(StandardCharsets.UTF_8));
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public void saveFolder(String path) {
+	}
+
+	@Override
+	public void copyFile(String source, String path, String entryName) {
+		try {
+			saver.saveResource(entryName, Files.readAllBytes(Paths.get(source)));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public void saveClassFile(String path, String qualifiedName, String entryName, String content, int[] mapping) {
+		saveSource(entryName, content);
+	}
+
+	@Override
+	public void createArchive(String path, String archiveName, Manifest manifest) {
+	}
+
+	@Override
+	public void saveDirEntry(String path, String archiveName, String entryName) {
+	}
+
+	@Override
+	public void copyEntry(String source, String path, String archiveName, String entry) {
+		try {
+			byte[] bytes = entries.getZip(source).getBytes(entry);
+			if (bytes != null) {
+				saver.saveResource(entry, bytes);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public void saveClassEntry(String path, String archiveName, String qualifiedName, String entryName, String content) {
+		saveSource(entryName, content);
+	}
+
+	@Override
+	public void closeArchive(String path, String archiveName) {
+	}
+}
@@ -0,0 +1,596 @@
+package org.mcphackers.mcp.tools.fernflower;
+
+import de.fernflower.main.decompiler.BaseDecompiler;
+import de.fernflower.main.extern.IFernflowerPreferences;
+import org.mcphackers.mcp.tools.FileUtil;
+import org.mcphackers.mcp.tools.source.SourceSaver;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Type;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Decompiles pending class groups in parallel contexts, each with one segment of the groups as its own input.
+ * Other segments and context classes are added to each context as libraries without method bodies,
+ * so that cross-segment references still resolve without the decompiler loading code it never decompiles.
+ * <p>
+ * When a class exceeds the time budget, the worker JVM of its context is destroyed. The remaining groups of that context are queued again
+ * and the slow group is retried alone with cheaper options. If that fails too, a stub is saved instead.
+ * Contexts in this JVM can't be stopped, so they have no time budget.
+ */
+public class ShardScheduler {
+	/**
+	 * Options used for classes which exceeded the time budget
+	 */
+	static final Map<String, Object> FALLBACK_OPTIONS = new TreeMap<>();
+	/**
+	 * Rough amount of heap Fernflower needs per byte of bytecode it decompiles, used to size batches
+	 */
+	private static final int HEAP_PER_BYTECODE = 64;
+	private static final int CONSTANT_CLASS = 7;
+
+	static {
+		FALLBACK_OPTIONS.put(IFernflowerPreferences.DECOMPILE_GENERIC_SIGNATURES, "0");
+		FALLBACK_OPTIONS.put(IFernflowerPreferences.REMOVE_BRIDGE, "0");
+	}
+
+	private final ClassEntries entries;
+	private final SourceSaver saver;
+	private final GroupCache cache;
+	private final DecompileLogger log;
+	private final Map<String, Object> options;
+	private final JavadocIndex javadocs;
+	private final Consumer<String> warnings;
+	private final Set<String> completedGroups = ConcurrentHashMap.newKeySet();
+	private int totalGroups;
+	private int threads = 1;
+	private int workers;
+	private WorkerLauncher launcher;
+	private int heapBudget;
+	private int timeout;
+
+	/**
+	 * @param cache cache to store decompiled groups in or <code>null</code>
+	 * @param warnings receives descriptions of classes which exceeded the time budget or couldn't be decompiled and errors reported by the decompiler
+	 */
+	public ShardScheduler(ClassEntries entries, SourceSaver saver, GroupCache cache, DecompileLogger log, Map<String, Object> options, JavadocIndex javadocs, Consumer<String> warnings) {
+		this.entries = entries;
+		this.saver = saver;
+		this.cache = cache;
+		this.log = log;
+		this.options = options;
+		this.javadocs = javadocs;
+		this.warnings = warnings;
+	}
+
+	/**
+	 * @param threads amount of contexts decompiling in parallel in this JVM
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	/**
+	 * @param workers amount of child JVMs decompiling in parallel, 0 to decompile in this JVM
+	 */
+	public void setWorkers(int workers, WorkerLauncher launcher) {
+		this.workers = workers;
+		this.launcher = launcher;
+	}
+
+	/**
+	 * @param heapBudget heap available for decompiling in megabytes, 0 to decompile all classes at once
+	 */
+	public void setHeapBudget(int heapBudget) {
+		this.heapBudget = heapBudget;
+	}
+
+	/**
+	 * @param timeout time budget of a class in seconds, 0 for no limit. Only applies to worker JVMs
+	 */
+	public void setTimeout(int timeout) {
+		this.timeout = timeout;
+	}
+
+	/**
+	 * @param tempParent directory to create the directory for segment jars in
+	 * @param pending class groups to decompile by top level class
+	 * @param context classes of the source jar which are only used as context
+	 * @param libraryClasses referenced library classes
+	 */
+	public void run(Path tempParent, Map<String, List<String>> pending, List<String> context, List<String> libraryClasses) throws IOException {
+		Path tempDir = Files.createTempDirectory(tempParent, "decompile");
+		boolean abandoned = false;
+		try {
+			List<File> libraryFiles = new ArrayList<>();
+			if (!libraryClasses.isEmpty()) {
+				libraryFiles.add(entries.writeJar(tempDir.resolve("libraries.jar"), libraryClasses, false));
+			}
+			if (!context.isEmpty()) {
+				libraryFiles.add(entries.writeJar(tempDir.resolve("context.jar"), context, true));
+			}
+			Map<String, String> classGroups = new HashMap<>();
+			for (Map.Entry<String, List<String>> group : pending.entrySet()) {
+				for (String name : group.getValue()) {
+					classGroups.put(getClassName(name), group.getKey());
+				}
+			}
+			completedGroups.clear();
+			totalGroups = pending.size();
+			List<Segment> segments = new ArrayList<>();
+			Deque<Job> queue = new ArrayDeque<>();
+			int parallelism = workers > 0 ? workers : threads;
+			List<List<String>> shards;
+			if (heapBudget > 0 && workers == 0) {
+				// One batch at a time, each context is released before the next batch starts
+				parallelism = 1;
+				shards = partitionByPackage(pending, heapBudget * 1024L * 1024L / HEAP_PER_BYTECODE);
+			} else {
+				shards = partition(pending, parallelism);
+			}
+			for (List<String> shard : shards) {
+				Segment segment = new Segment(tempDir, shard, pending);
+				segments.add(segment);
+				queue.add(new Job(segment, false));
+			}
+			BlockingQueue<Job> finished = new LinkedBlockingQueue<>();
+			List<Job> running = new CopyOnWriteArrayList<>();
+			ExecutorService pool = Executors.newCachedThreadPool(runnable -> {
+				Thread thread = new Thread(runnable, "Decompiler");
+				thread.setDaemon(true);
+				return thread;
+			});
+			ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "Decompiler watchdog");
+				thread.setDaemon(true);
+				return thread;
+			});
+			if (timeout > 0 && launcher != null) {
+				watchdog.scheduleAtFixedRate(() -> {
+					for (Job job : running) {
+						job.checkTimeout(finished);
+					}
+				}, 1, 1, TimeUnit.SECONDS);
+			}
+			try {
+				while (!queue.isEmpty() || !running.isEmpty()) {
+					while (!queue.isEmpty() && running.size() < parallelism) {
+						Job job = queue.poll();
+						List<File> spaces = new ArrayList<>(libraryFiles);
+						for (Segment segment : segments) {
+							if (segment != job.segment) {
+								spaces.add(segment.stubs);
+							}
+						}
+						running.add(job);
+						pool.execute(() -> job.run(spaces, classGroups, finished));
+					}
+					Job job;
+					try {
+						job = finished.take();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new IOException("Interrupted while waiting for decompiler", e);
+					}
+					running.remove(job);
+					if (job.timedOutGroup != null) {
+						abandoned = true;
+						log.getProfile().addTimeout(job.timedOutGroup, TimeUnit.SECONDS.toNanos(timeout), job.fallback ? FALLBACK_OPTIONS.toString() : null);
+						List<String> done = new ArrayList<>();
+						List<String> rest = new ArrayList<>();
+						for (String group : job.segment.groups) {
+							if (job.saved.contains(group)) {
+								done.add(group);
+							} else if (!group.equals(job.timedOutGroup)) {
+								rest.add(group);
+							}
+						}
+						if (job.fallback) {
+							saveStub(job.timedOutGroup, pending, "Decompiling timed out after " + timeout + " seconds");
+							continue;
+						}
+						warnings.accept(job.timedOutGroup + " exceeded the time budget of " + timeout + " seconds, retrying with reduced options");
+						segments.remove(job.segment);
+						if (!done.isEmpty()) {
+							segments.add(new Segment(tempDir, done, pending));
+						}
+						if (!rest.isEmpty()) {
+							Segment segment = new Segment(tempDir, rest, pending);
+							segments.add(segment);
+							queue.add(new Job(segment, false));
+						}
+						Segment segment = new Segment(tempDir, Collections.singletonList(job.timedOutGroup), pending);
+						segments.add(segment);
+						queue.add(new Job(segment, true));
+					} else if (job.failure != null) {
+						if (!job.fallback) {
+							rethrow(job.failure);
+						}
+						saveStub(job.segment.groups.get(0), pending, "Decompiling failed: " + job.failure);
+					}
+				}
+			} finally {
+				watchdog.shutdownNow();
+				pool.shutdownNow();
+			}
+		} finally {
+			try {
+				FileUtil.deleteDirectory(tempDir);
+			} catch (IOException e) {
+				// Abandoned contexts may still hold their jars open
+				if (!abandoned) {
+					throw e;
+				}
+			}
+		}
+	}
+
+	private void saveStub(String group, Map<String, List<String>> pending, String reason) throws IOException {
+		warnings.accept(group + ": " + reason + ", saved a stub with declarations only");
+		Map<String, byte[]> classes = new HashMap<>();
+		for (String name : pending.get(group)) {
+			classes.put(name, entries.get(name));
+		}
+		saver.saveSource(group + ".java", ClassStub.create(group, classes, reason));
+		updateProgress(group);
+	}
+
+	private void updateProgress(String group) {
+		if (completedGroups.add(group)) {
+			log.updateProgress(completedGroups.size(), totalGroups);
+		}
+	}
+
+	private static void rethrow(Throwable t) throws IOException {
+		if (t instanceof UncheckedIOException) {
+			throw ((UncheckedIOException) t).getCause();
+		}
+		if (t instanceof IOException) {
+			throw (IOException) t;
+		}
+		if (t instanceof RuntimeException) {
+			throw (RuntimeException) t;
+		}
+		if (t instanceof Error) {
+			throw (Error) t;
+		}
+		throw new IOException(t);
+	}
+
+	/**
+	 * Distributes class groups between shards, largest groups first, so that every shard gets a similar amount of bytecode
+	 *
+	 * @return names of groups in each shard
+	 */
+	private List<List<String>> partition(Map<String, List<String>> groups, int count) throws IOException {
+		Map<String, Long> groupSizes = getSizes(groups);
+		List<String> sorted = new ArrayList<>(groups.keySet());
+		sorted.sort(Comparator.comparingLong(groupSizes::get).reversed());
+		int shardCount = Math.max(1, Math.min(count, sorted.size()));
+		List<List<String>> shards = new ArrayList<>();
+		long[] sizes = new long[shardCount];
+		for (int i = 0; i < shardCount; i++) {
+			shards.add(new ArrayList<>());
+		}
+		for (String group : sorted) {
+			int smallest = 0;
+			for (int i = 1; i < shardCount; i++) {
+				if (sizes[i] < sizes[smallest]) {
+					smallest = i;
+				}
+			}
+			shards.get(smallest).add(group);
+			sizes[smallest] += groupSizes.get(group);
+		}
+		return shards;
+	}
+
+	/**
+	 * Splits class groups into batches of consecutive packages which don't exceed <code>maxBytes</code> of bytecode.
+	 * A group larger than <code>maxBytes</code> gets its own batch.
+	 *
+	 * @return names of groups in each batch, packages ordered by {@link #getPackageOrder}
+	 */
+	private List<List<String>> partitionByPackage(Map<String, List<String>> groups, long maxBytes) throws IOException {
+		Map<String, Long> groupSizes = getSizes(groups);
+		Map<String, List<String>> packageGroups = new HashMap<>();
+		for (String group : new TreeMap<>(groups).keySet()) {
+			packageGroups.computeIfAbsent(getPackage(group), k -> new ArrayList<>()).add(group);
+		}
+		List<String> ordered = new ArrayList<>();
+		for (String pkg : getPackageOrder(groups)) {
+			ordered.addAll(packageGroups.get(pkg));
+		}
+		List<List<String>> batches = new ArrayList<>();
+		List<String> batch = new ArrayList<>();
+		long batchSize = 0;
+		String batchPackage = null;
+		for (String group : ordered) {
+			long size = groupSizes.get(group);
+			String pkg = getPackage(group);
+			boolean full = batchSize + size > maxBytes;
+			// Prefer ending a batch at a package boundary once it's half full
+			boolean packageEnd = !pkg.equals(batchPackage) && batchSize > maxBytes / 2;
+			if (!batch.isEmpty() && (full || packageEnd)) {
+				batches.add(batch);
+				batch = new ArrayList<>();
+				batchSize = 0;
+			}
+			batch.add(group);
+			batchSize += size;
+			batchPackage = pkg;
+		}
+		if (!batch.isEmpty()) {
+			batches.add(batch);
+		}
+		return batches;
+	}
+
+	/**
+	 * Orders packages of the groups so that packages come after the packages they reference.
+	 * Packages which reference each other are kept next to each other, in name order.
+	 *
+	 * @return every package of the groups, dependencies first
+	 */
+	private List<String> getPackageOrder(Map<String, List<String>> groups) throws IOException {
+		Map<String, Set<String>> references = new TreeMap<>();
+		for (String group : groups.keySet()) {
+			references.computeIfAbsent(getPackage(group), k -> new TreeSet<>());
+		}
+		for (Map.Entry<String, List<String>> group : groups.entrySet()) {
+			String pkg = getPackage(group.getKey());
+			Set<String> packageReferences = references.get(pkg);
+			for (String name : group.getValue()) {
+				if (!name.endsWith(".class")) {
+					continue;
+				}
+				for (String className : getReferencedClasses(entries.get(name))) {
+					String referenced = getPackage(className);
+					if (!referenced.equals(pkg) && references.containsKey(referenced)) {
+						packageReferences.add(referenced);
+					}
+				}
+			}
+		}
+		return new PackageOrder(references).order;
+	}
+
+	/**
+	 * @return internal names of classes in the constant pool, which includes every class the code refers to
+	 */
+	private static Set<String> getReferencedClasses(byte[] bytes) {
+		ClassReader reader = new ClassReader(bytes);
+		char[] buffer = new char[reader.getMaxStringLength()];
+		Set<String> classes = new HashSet<>();
+		for (int i = 1; i < reader.getItemCount(); i++) {
+			int offset = reader.getItem(i);
+			// The slot after a long or double constant has no offset
+			if (offset == 0 || reader.readByte(offset - 1) != CONSTANT_CLASS) {
+				continue;
+			}
+			String name = reader.readUTF8(offset, buffer);
+			if (name.startsWith("[")) {
+				Type element = Type.getType(name).getElementType();
+				if (element.getSort() != Type.OBJECT) {
+					continue;
+				}
+				name = element.getInternalName();
+			}
+			classes.add(name);
+		}
+		return classes;
+	}
+
+	/**
+	 * Strongly connected components of the package reference graph found by Tarjan's algorithm.
+	 * A component is only completed after every component it references, so they're found in dependency order
+	 */
+	private static final class PackageOrder {
+		private final Map<String, Set<String>> references;
+		private final Map<String, Integer> indices = new HashMap<>();
+		private final Map<String, Integer> lowLinks = new HashMap<>();
+		private final Deque<String> stack = new ArrayDeque<>();
+		private final Set<String> onStack = new HashSet<>();
+		private final List<String> order = new ArrayList<>();
+
+		private PackageOrder(Map<String, Set<String>> references) {
+			this.references = references;
+			for (String pkg : references.keySet()) {
+				if (!indices.containsKey(pkg)) {
+					visit(pkg);
+				}
+			}
+		}
+
+		private void visit(String pkg) {
+			int index = indices.size();
+			indices.put(pkg, index);
+			lowLinks.put(pkg, index);
+			stack.push(pkg);
+			onStack.add(pkg);
+			for (String referenced : references.get(pkg)) {
+				if (!indices.containsKey(referenced)) {
+					visit(referenced);
+					lowLinks.put(pkg, Math.min(lowLinks.get(pkg), lowLinks.get(referenced)));
+				} else if (onStack.contains(referenced)) {
+					lowLinks.put(pkg, Math.min(lowLinks.get(pkg), indices.get(referenced)));
+				}
+			}
+			if (lowLinks.get(pkg) == index) {
+				List<String> component = new ArrayList<>();
+				String member;
+				do {
+					member = stack.pop();
+					onStack.remove(member);
+					component.add(member);
+				} while (!member.equals(pkg));
+				Collections.sort(component);
+				order.addAll(component);
+			}
+		}
+	}
+
+	private static String getPackage(String className) {
+		return className.substring(0, Math.max(0, className.lastIndexOf('/')));
+	}
+
+	/**
+	 * @return amount of bytecode of each group
+	 */
+	private Map<String, Long> getSizes(Map<String, List<String>> groups) throws IOException {
+		Map<String, Long> sizes = new HashMap<>();
+		for (Map.Entry<String, List<String>> group : groups.entrySet()) {
+			long size = 0;
+			for (String name : group.getValue()) {
+				size += entries.getSize(name);
+			}
+			sizes.put(group.getKey(), size);
+		}
+		return sizes;
+	}
+
+	private static String getClassName(String entryName) {
+		return entryName.substring(0, entryName.length() - 6);
+	}
+
+	/**
+	 * Class groups which are decompiled in the same context, the jar containing them
+	 * and a jar of the same classes without method bodies, which other contexts use as a library
+	 */
+	private final class Segment {
+		private final List<String> groups;
+		private final File jar;
+		private final File stubs;
+
+		private Segment(Path tempDir, List<String> groups, Map<String, List<String>> pending) throws IOException {
+			this.groups = groups;
+			List<String> names = new ArrayList<>();
+			for (String group : groups) {
+				names.addAll(pending.get(group));
+			}
+			this.jar = entries.writeJar(Files.createTempFile(tempDir, "segment", ".jar"), names, false);
+			this.stubs = entries.writeJar(Files.createTempFile(tempDir, "stubs", ".jar"), names, true);
+		}
+	}
+
+	/**
+	 * Decompile context for one segment, watched for classes exceeding the time budget
+	 */
+	final class Job {
+		private final Segment segment;
+		private final boolean fallback;
+		private final Set<String> saved = ConcurrentHashMap.newKeySet();
+		private final AtomicBoolean finished = new AtomicBoolean();
+		private volatile Thread thread;
+		private volatile String currentGroup;
+		private volatile long startTime;
+		private volatile String timedOutGroup;
+		private volatile Throwable failure;
+
+		private Job(Segment segment, boolean fallback) {
+			this.segment = segment;
+			this.fallback = fallback;
+		}
+
+		private void run(List<File> spaces, Map<String, String> classGroups, BlockingQueue<Job> finishedJobs) {
+			thread = Thread.currentThread();
+			try {
+				Map<String, Object> contextOptions = new HashMap<>(options);
+				if (fallback) {
+					contextOptions.putAll(FALLBACK_OPTIONS);
+				}
+				DecompileLogger logger = log.createChild(className -> {
+					currentGroup = classGroups.getOrDefault(className, className);
+					startTime = System.nanoTime();
+				}, message -> {
+					String group = currentGroup;
+					warnings.accept(group == null ? message : group + ": " + message);
+				});
+				ResultSaver resultSaver = new ResultSaver(saver, cache, log.getProfile(), entries, this);
+				if (launcher != null) {
+					launcher.run(segment.jar, spaces, contextOptions, logger, resultSaver);
+					return;
+				}
+				BaseDecompiler decompiler = new BaseDecompiler(entries, resultSaver, contextOptions, logger, javadocs);
+				for (File space : spaces) {
+					decompiler.addSpace(space, false);
+				}
+				decompiler.addSpace(segment.jar, true);
+				decompiler.decompileContext();
+			} catch (Throwable t) {
+				failure = t;
+			} finally {
+				if (finished.compareAndSet(false, true)) {
+					finishedJobs.add(this);
+				}
+			}
+		}
+
+		/**
+		 * Abandons this context if the class being decompiled exceeded the time budget
+		 */
+		private void checkTimeout(BlockingQueue<Job> finishedJobs) {
+			String group = currentGroup;
+			if (group == null || System.nanoTime() - startTime < TimeUnit.SECONDS.toNanos(timeout)) {
+				return;
+			}
+			if (finished.compareAndSet(false, true)) {
+				timedOutGroup = group;
+				Thread current = thread;
+				if (current != null) {
+					current.interrupt();
+				}
+				finishedJobs.add(this);
+			}
+		}
+
+		/**
+		 * @return whether the context decompiles with reduced options
+		 */
+		boolean isFallback() {
+			return fallback;
+		}
+
+		/**
+		 * @param group top level class of the saved source or <code>null</code> for other files
+		 * @return whether the output should be saved, output of abandoned contexts is discarded
+		 */
+		boolean onSave(String group) {
+			if (timedOutGroup != null) {
+				return false;
+			}
+			currentGroup = null;
+			if (group != null) {
+				saved.add(group);
+				updateProgress(group);
+			}
+			return true;
+		}
+	}
+}
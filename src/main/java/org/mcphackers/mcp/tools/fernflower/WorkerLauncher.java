@@ -0,0 +1,72 @@
+package org.mcphackers.mcp.tools.fernflower;
+
+import de.fernflower.main.extern.IResultSaver;
+import org.mcphackers.mcp.tools.Util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Starts {@link DecompileWorker} JVMs and passes their output to the logger and result saver of a decompile context
+ */
+public class WorkerLauncher {
+	private final String[] jvmArgs;
+	private final Path javadocIndex;
+	private final JavadocIndex javadocs;
+
+	/**
+	 * @param jvmArgs arguments of the child JVM, such as its heap size
+	 * @param javadocIndex stored javadoc index for the workers to read
+	 * @param javadocs javadocs loaded from <code>javadocIndex</code> or <code>null</code> if there are none
+	 */
+	public WorkerLauncher(String[] jvmArgs, Path javadocIndex, JavadocIndex javadocs) {
+		this.jvmArgs = jvmArgs;
+		this.javadocIndex = javadocIndex;
+		this.javadocs = javadocs;
+	}
+
+	/**
+	 * Decompiles a jar in a child JVM. Interrupting the calling thread destroys the JVM.
+	 *
+	 * @param jar jar to decompile
+	 * @param spaces jars used as libraries
+	 */
+	public void run(File jar, List<File> spaces, Map<String, Object> options, DecompileLogger logger, IResultSaver resultSaver) throws IOException {
+		Path optionsFile = Files.createTempFile(jar.getAbsoluteFile().toPath().getParent(), "options", ".properties");
+		Properties properties = new Properties();
+		for (Map.Entry<String, Object> option : options.entrySet()) {
+			properties.setProperty(option.getKey(), String.valueOf(option.getValue()));
+		}
+		if (javadocs != null) {
+			properties.setProperty(DecompileWorker.JAVADOC_INDEX, javadocIndex.toAbsolutePath().toString());
+			properties.setProperty(DecompileWorker.JAVADOC_HASH, javadocs.getHash());
+		}
+		try (Writer writer = Files.newBufferedWriter(optionsFile, StandardCharsets.UTF_8)) {
+			properties.store(writer, null);
+		}
+		List<String> cmd = new ArrayList<>();
+		cmd.add(Util.getJava());
+		Collections.addAll(cmd, jvmArgs);
+		cmd.add("-cp");
+		cmd.add(System.getProperty("java.class.path"));
+		cmd.add(DecompileWorker.class.getName());
+		cmd.add(optionsFile.toAbsolutePath().toString());
+		cmd.add(jar.getAbsolutePath());
+		for (File space : spaces) {
+			cmd.add(space.getAbsolutePath());
+		}
+		int exitCode = Util.runCommand(cmd.toArray(new String[0]), null, in -> DecompileWorker.read(in, logger, resultSaver));
+		if (exitCode != 0) {
+			throw new IOException("Decompile worker exited with code " + exitCode);
+		}
+	}
+}
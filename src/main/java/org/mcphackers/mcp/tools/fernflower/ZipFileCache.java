@@ -1,21 +1,22 @@
 package org.mcphackers.mcp.tools.fernflower;
 
-import java.io.File;
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.nio.file.Paths;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.zip.ZipFile;
+
+import org.mcphackers.mcp.tools.ZipIndex;
 
 // Taken from VineFlower graciously
 public final class ZipFileCache implements AutoCloseable {
-	private final Map<String, ZipFile> files = new ConcurrentHashMap<>();
+	private final Map<String, ZipIndex> files = new ConcurrentHashMap<>();
 
-	public ZipFile get(final String path) throws IOException {
+	public ZipIndex get(final String path) throws IOException {
 		try {
 			return this.files.computeIfAbsent(path, pth -> {
 				try {
-					return new ZipFile(new File(pth));
+					return new ZipIndex(Paths.get(pth));
 				} catch (IOException ex) {
 					throw new UncheckedIOException(ex);
 				}
@@ -29,7 +30,7 @@ public final class ZipFileCache implements AutoCloseable {
 	public void close() {
 		IOException failure = null;
 
-		for (Map.Entry<String, ZipFile> entry : this.files.entrySet()) {
+		for (Map.Entry<String, ZipIndex> entry : this.files.entrySet()) {
 			try {
 				entry.getValue().close();
 			} catch (IOException ex) {
@@ -0,0 +1,390 @@
+package org.mcphackers.mcp.tools.injector;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.mcphackers.mcp.tools.Util;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.InnerClassNode;
+import org.objectweb.asm.tree.MethodNode;
+
+/**
+ * Exceptions and access levels from the conf files, compiled into tables sorted by owner, name and descriptor.
+ * The index is stored with a hash of the conf files and only rebuilt when they change.
+ * Lookups only read arrays which never change after loading, so transforms running in parallel may query the index without locking.
+ * <p>
+ * Lines are parsed strictly. If a file has a line which doesn't fit the expected format, no index is used
+ * and the files are left to the injector's own parsers.
+ */
+public final class ConfIndex {
+	private static final int VERSION = 1;
+	/**
+	 * <code>owner.name(desc)=exception,exception|parameters</code>
+	 */
+	private static final Pattern EXCEPTION = Pattern.compile("^([^\\s.=]+)\\.([^\\s.(=]+)(\\([^\\s)]*\\)[^\\s=|]+)=([^\\s=|]*)(?:\\|.*)?$");
+	/**
+	 * <code>level owner</code>, <code>level owner.field</code> or <code>level owner.method(desc)</code>
+	 */
+	private static final Pattern ACCESS = Pattern.compile("^(public|protected|default|private)\\s+([^\\s.]+)(?:\\.([^\\s.(]+)(\\([^\\s)]*\\)\\S+)?)?$", Pattern.CASE_INSENSITIVE);
+	private static final int[] LEVELS = {Opcodes.ACC_PRIVATE, 0, Opcodes.ACC_PROTECTED, Opcodes.ACC_PUBLIC};
+	private static final int LEVEL_MASK = Opcodes.ACC_PUBLIC | Opcodes.ACC_PROTECTED | Opcodes.ACC_PRIVATE;
+
+	private final String hash;
+	private final boolean supported;
+	private final String[] strings;
+	/**
+	 * Comma separated exceptions by method
+	 */
+	private final Table exceptions;
+	/**
+	 * Index into {@link #LEVELS} by class, field or method
+	 */
+	private final Table access;
+
+	private ConfIndex(String hash, boolean supported, String[] strings, Table exceptions, Table access) {
+		this.hash = hash;
+		this.supported = supported;
+		this.strings = strings;
+		this.exceptions = exceptions;
+		this.access = access;
+	}
+
+	/**
+	 * @param exceptionsFile exceptions conf file
+	 * @param accessFiles access conf files, a member listed in several files gets the widest level
+	 * @param indexFile stored index
+	 * @return index or <code>null</code> if none of the files exist or one of them couldn't be compiled
+	 */
+	public static ConfIndex load(Path exceptionsFile, List<Path> accessFiles, Path indexFile) throws IOException {
+		List<Path> files = new ArrayList<>();
+		files.add(exceptionsFile);
+		files.addAll(accessFiles);
+		StringBuilder sb = new StringBuilder();
+		boolean found = false;
+		for (Path file : files) {
+			boolean exists = Files.exists(file);
+			found |= exists;
+			sb.append(file.getFileName()).append(' ').append(exists ? Util.getSHA1(file) : "-").append('\n');
+		}
+		if (!found) {
+			return null;
+		}
+		String hash = sb.toString();
+		if (Files.exists(indexFile)) {
+			ConfIndex index = read(indexFile);
+			if (index != null && index.hash.equals(hash)) {
+				return index.supported ? index : null;
+			}
+		}
+		ConfIndex index = build(exceptionsFile, accessFiles, hash);
+		index.write(indexFile);
+		return index.supported ? index : null;
+	}
+
+	private static ConfIndex build(Path exceptionsFile, List<Path> accessFiles, String hash) throws IOException {
+		Map<String, Integer> ids = new HashMap<>();
+		List<String> strings = new ArrayList<>();
+		List<int[]> exceptions = new ArrayList<>();
+		Map<List<Integer>, int[]> access = new HashMap<>();
+		if (Files.exists(exceptionsFile)) {
+			for (String line : Files.readAllLines(exceptionsFile, StandardCharsets.UTF_8)) {
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#")) {
+					continue;
+				}
+				Matcher matcher = EXCEPTION.matcher(line);
+				if (!matcher.matches()) {
+					return unsupported(hash);
+				}
+				if (matcher.group(4).isEmpty()) {
+					continue;
+				}
+				exceptions.add(new int[]{intern(matcher.group(1), ids, strings), intern(matcher.group(2), ids, strings), intern(matcher.group(3), ids, strings), intern(matcher.group(4), ids, strings)});
+			}
+		}
+		for (Path accessFile : accessFiles) {
+			if (!Files.exists(accessFile)) {
+				continue;
+			}
+			for (String line : Files.readAllLines(accessFile, StandardCharsets.UTF_8)) {
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#")) {
+					continue;
+				}
+				Matcher matcher = ACCESS.matcher(line);
+				if (!matcher.matches()) {
+					return unsupported(hash);
+				}
+				int level = getLevel(matcher.group(1));
+				int[] entry = new int[]{intern(matcher.group(2), ids, strings), intern(matcher.group(3), ids, strings), intern(matcher.group(4), ids, strings), level};
+				List<Integer> key = new ArrayList<>();
+				key.add(entry[0]);
+				key.add(entry[1]);
+				key.add(entry[2]);
+				int[] existing = access.putIfAbsent(key, entry);
+				if (existing != null && existing[3] < level) {
+					existing[3] = level;
+				}
+			}
+		}
+		String[] table = strings.toArray(new String[0]);
+		return new ConfIndex(hash, true, table, Table.sorted(exceptions, table), Table.sorted(new ArrayList<>(access.values()), table));
+	}
+
+	private static ConfIndex unsupported(String hash) {
+		return new ConfIndex(hash, false, new String[0], new Table(0), new Table(0));
+	}
+
+	private static int getLevel(String keyword) {
+		switch (keyword.toLowerCase(Locale.ROOT)) {
+			case "public":
+				return 3;
+			case "protected":
+				return 2;
+			case "default":
+				return 1;
+			default:
+				return 0;
+		}
+	}
+
+	private static int intern(String s, Map<String, Integer> ids, List<String> strings) {
+		if (s == null) {
+			return -1;
+		}
+		Integer id = ids.get(s);
+		if (id == null) {
+			id = strings.size();
+			ids.put(s, id);
+			strings.add(s);
+		}
+		return id;
+	}
+
+	/**
+	 * @return stored index or <code>null</code> if it's missing or malformed
+	 */
+	private static ConfIndex read(Path indexFile) {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+			if (in.readInt() != VERSION) {
+				return null;
+			}
+			String hash = in.readUTF();
+			boolean supported = in.readBoolean();
+			String[] strings = new String[in.readInt()];
+			for (int i = 0; i < strings.length; i++) {
+				strings[i] = in.readUTF();
+			}
+			return new ConfIndex(hash, supported, strings, Table.read(in), Table.read(in));
+		} catch (IOException | RuntimeException e) {
+			// Malformed index, rebuild it
+			return null;
+		}
+	}
+
+	private void write(Path indexFile) throws IOException {
+		Files.createDirectories(indexFile.getParent());
+		// Sides may build their index at the same time, the index is replaced once it's complete
+		Path tempFile = Files.createTempFile(indexFile.getParent(), "conf", ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+			out.writeInt(VERSION);
+			out.writeUTF(hash);
+			out.writeBoolean(supported);
+			out.writeInt(strings.length);
+			for (String s : strings) {
+				out.writeUTF(s);
+			}
+			exceptions.write(out);
+			access.write(out);
+		}
+		try {
+			Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			Files.deleteIfExists(tempFile);
+		}
+	}
+
+	/**
+	 * @return internal names of exceptions the method declares in the conf files, or <code>null</code>
+	 */
+	public String[] getExceptions(String owner, String name, String desc) {
+		int value = exceptions.find(strings, owner, name, desc);
+		return value == -1 ? null : strings[value].split(",");
+	}
+
+	/**
+	 * @param name member name or <code>null</code> for the class itself
+	 * @param desc member descriptor or <code>null</code> to look up a field by name only
+	 * @return access flag of the level from the conf files, or -1 if it's not listed
+	 */
+	public int getAccess(String owner, String name, String desc) {
+		int value = access.find(strings, owner, name, desc);
+		return value == -1 ? -1 : LEVELS[value];
+	}
+
+	/**
+	 * Adds exceptions to methods and widens access of the class, its members and the inner classes it lists.
+	 * Only reads the index, so classes may be fixed concurrently.
+	 */
+	public void apply(ClassNode node) {
+		node.access = widen(node.access, getAccess(node.name, null, null), true);
+		for (InnerClassNode innerClass : node.innerClasses) {
+			innerClass.access = widen(innerClass.access, getAccess(innerClass.name, null, null), false);
+		}
+		for (FieldNode field : node.fields) {
+			int level = getAccess(node.name, field.name, field.desc);
+			if (level == -1) {
+				level = getAccess(node.name, field.name, null);
+			}
+			field.access = widen(field.access, level, false);
+		}
+		for (MethodNode method : node.methods) {
+			method.access = widen(method.access, getAccess(node.name, method.name, method.desc), false);
+			String[] methodExceptions = getExceptions(node.name, method.name, method.desc);
+			if (methodExceptions == null) {
+				continue;
+			}
+			for (String exception : methodExceptions) {
+				if (!method.exceptions.contains(exception)) {
+					method.exceptions.add(exception);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param topLevel whether the access flags are those of a class file, which can only be public or package private
+	 */
+	private static int widen(int access, int level, boolean topLevel) {
+		if (level == -1 || rank(level) <= rank(access & LEVEL_MASK)) {
+			return access;
+		}
+		if (topLevel && level != 0) {
+			level = Opcodes.ACC_PUBLIC;
+		}
+		return access & ~LEVEL_MASK | level;
+	}
+
+	private static int rank(int level) {
+		switch (level) {
+			case Opcodes.ACC_PUBLIC:
+				return 3;
+			case Opcodes.ACC_PROTECTED:
+				return 2;
+			case Opcodes.ACC_PRIVATE:
+				return 0;
+			default:
+				return 1;
+		}
+	}
+
+	/**
+	 * Entries sorted by owner, name and descriptor, stored as indices into the string table
+	 */
+	private static final class Table {
+		private final int size;
+		private final int[] owners;
+		private final int[] names;
+		private final int[] descs;
+		private final int[] values;
+
+		private Table(int size) {
+			this.size = size;
+			this.owners = new int[size];
+			this.names = new int[size];
+			this.descs = new int[size];
+			this.values = new int[size];
+		}
+
+		private static Table sorted(List<int[]> entries, String[] strings) {
+			Comparator<String> order = Comparator.nullsFirst(Comparator.naturalOrder());
+			entries.sort(Comparator.comparing((int[] entry) -> get(strings, entry[0]), order)
+					.thenComparing(entry -> get(strings, entry[1]), order)
+					.thenComparing(entry -> get(strings, entry[2]), order));
+			Table table = new Table(entries.size());
+			for (int i = 0; i < table.size; i++) {
+				int[] entry = entries.get(i);
+				table.owners[i] = entry[0];
+				table.names[i] = entry[1];
+				table.descs[i] = entry[2];
+				table.values[i] = entry[3];
+			}
+			return table;
+		}
+
+		private static String get(String[] strings, int id) {
+			return id == -1 ? null : strings[id];
+		}
+
+		private static int compare(String a, String b) {
+			if (a == null || b == null) {
+				return a == null ? (b == null ? 0 : -1) : 1;
+			}
+			return a.compareTo(b);
+		}
+
+		/**
+		 * @return value of the entry or -1 if there is none
+		 */
+		private int find(String[] strings, String owner, String name, String desc) {
+			int low = 0;
+			int high = size - 1;
+			while (low <= high) {
+				int mid = (low + high) >>> 1;
+				int cmp = compare(get(strings, owners[mid]), owner);
+				if (cmp == 0) {
+					cmp = compare(get(strings, names[mid]), name);
+				}
+				if (cmp == 0) {
+					cmp = compare(get(strings, descs[mid]), desc);
+				}
+				if (cmp < 0) {
+					low = mid + 1;
+				} else if (cmp > 0) {
+					high = mid - 1;
+				} else {
+					return values[mid];
+				}
+			}
+			return -1;
+		}
+
+		private static Table read(DataInputStream in) throws IOException {
+			Table table = new Table(in.readInt());
+			for (int i = 0; i < table.size; i++) {
+				table.owners[i] = in.readInt();
+				table.names[i] = in.readInt();
+				table.descs[i] = in.readInt();
+				table.values[i] = in.readInt();
+			}
+			return table;
+		}
+
+		private void write(DataOutputStream out) throws IOException {
+			out.writeInt(size);
+			for (int i = 0; i < size; i++) {
+				out.writeInt(owners[i]);
+				out.writeInt(names[i]);
+				out.writeInt(descs[i]);
+				out.writeInt(values[i]);
+			}
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package org.mcphackers.mcp.tools.injector;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+
+/**
+ * Runs several {@link InsnMatcher}s in one traversal of each method.
+ * Instructions are dispatched to matchers by opcode, and methods without any candidate opcode are skipped
+ * before anything is allocated for them. Edits are applied after the traversal, matcher by matcher in the order they were added.
+ * The visitor holds no state while visiting, so methods may be visited concurrently once all matchers are added.
+ */
+public class FusedInsnVisitor {
+	private static final int[] NONE = new int[0];
+
+	private final List<InsnMatcher> matchers = new ArrayList<>();
+	/**
+	 * Indices of matchers by opcode
+	 */
+	private final int[][] byOpcode = new int[256][];
+
+	public FusedInsnVisitor() {
+		for (int i = 0; i < byOpcode.length; i++) {
+			byOpcode[i] = NONE;
+		}
+	}
+
+	public FusedInsnVisitor add(InsnMatcher matcher) {
+		int index = matchers.size();
+		matchers.add(matcher);
+		for (int opcode : matcher.getOpcodes()) {
+			int[] current = byOpcode[opcode];
+			int[] updated = new int[current.length + 1];
+			System.arraycopy(current, 0, updated, 0, current.length);
+			updated[current.length] = index;
+			byOpcode[opcode] = updated;
+		}
+		return this;
+	}
+
+	private int[] getMatchers(AbstractInsnNode insn) {
+		int opcode = insn.getOpcode();
+		// Labels, line numbers and frames have no opcode
+		return opcode < 0 ? NONE : byOpcode[opcode];
+	}
+
+	public void visitClass(ClassNode node) {
+		for (MethodNode method : node.methods) {
+			visitMethod(method);
+		}
+	}
+
+	public void visitMethod(MethodNode node) {
+		AbstractInsnNode insn = node.instructions.getFirst();
+		while (insn != null && getMatchers(insn).length == 0) {
+			insn = insn.getNext();
+		}
+		if (insn == null) {
+			return;
+		}
+		List<List<Runnable>> edits = new ArrayList<>(matchers.size());
+		for (int i = 0; i < matchers.size(); i++) {
+			edits.add(new ArrayList<>());
+		}
+		for (; insn != null; insn = insn.getNext()) {
+			for (int index : getMatchers(insn)) {
+				matchers.get(index).match(node, insn, edits.get(index));
+			}
+		}
+		for (List<Runnable> matcherEdits : edits) {
+			for (Runnable edit : matcherEdits) {
+				edit.run();
+			}
+		}
+	}
+}
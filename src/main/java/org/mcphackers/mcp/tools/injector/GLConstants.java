@@ -1,21 +1,20 @@
 package org.mcphackers.mcp.tools.injector;
 
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 
-import org.json.JSONArray;
-import org.json.JSONObject;
-import org.mcphackers.mcp.tools.JSONUtil;
 import org.mcphackers.rdi.injector.visitors.ClassVisitor;
 import org.mcphackers.rdi.util.IdentifyCall;
-import org.mcphackers.rdi.util.Pair;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.FieldInsnNode;
 import org.objectweb.asm.tree.InsnList;
 import org.objectweb.asm.tree.InsnNode;
@@ -26,25 +25,41 @@ import org.objectweb.asm.tree.MethodNode;
 
 public final class GLConstants extends ClassVisitor {
 
+	/**
+	 * Version of gl_constants.bin, written by GLConstantsCompiler of the tablegen source set
+	 */
+	private static final int VERSION = 1;
 	private static final boolean INIT;
-	private static final List<Pair<Map<String, List<String>>, Map<String, Map<Integer, String>>>> CONSTANTS;
-	private static final Map<Integer, String> CONSTANTS_KEYBOARD;
-	private static final List<String> PACKAGES;
-	private static final char[] OPERATORS = {'|', '&', '^'};
+	/**
+	 * Constants by OpenGL method owner and name
+	 */
+	private static final Map<String, Map<String, IntTable<Expression>>> METHODS;
+	private static final IntTable<String> CONSTANTS_KEYBOARD;
+	/**
+	 * Keyboard constants are replaced before OpenGL constants, OpenGL and keyboard methods are all static
+	 */
+	private static final FusedInsnVisitor VISITOR = new FusedInsnVisitor()
+			.add(new KeyboardMatcher())
+			.add(new GLCallMatcher());
 
 	static {
-		JSONObject json = JSONUtil.getJSON(GLConstants.class.getClassLoader().getResourceAsStream("gl_constants.json"));
-		if (json != null) {
-			CONSTANTS = getConstants(json.optJSONArray("CONSTANTS"));
-			CONSTANTS_KEYBOARD = JSONUtil.toMap(json.optJSONObject("CONSTANTS_KEYBOARD"));
-			PACKAGES = getPackages(CONSTANTS);
-			INIT = true;
-		} else {
-			CONSTANTS = null;
-			CONSTANTS_KEYBOARD = null;
-			PACKAGES = null;
-			INIT = false;
+		Map<String, Map<String, IntTable<Expression>>> methods = null;
+		IntTable<String> keyboard = null;
+		InputStream stream = GLConstants.class.getClassLoader().getResourceAsStream("gl_constants.bin");
+		if (stream != null) {
+			try (DataInputStream in = new DataInputStream(new BufferedInputStream(stream))) {
+				if (in.readInt() == VERSION) {
+					methods = readMethods(in);
+					keyboard = readKeyboard(in);
+				}
+			} catch (IOException e) {
+				methods = null;
+				keyboard = null;
+			}
 		}
+		METHODS = methods;
+		CONSTANTS_KEYBOARD = keyboard;
+		INIT = methods != null;
 	}
 
 	public GLConstants(ClassVisitor classVisitor) {
@@ -103,45 +118,18 @@ public final class GLConstants extends ClassVisitor {
 		return constantString == null ? null : new FieldInsnNode(Opcodes.GETSTATIC, "org/lwjgl/input/Keyboard", constantString, "I");
 	}
 
-	public static InsnList getGLInsn(MethodInsnNode invoke, int constant) {
-		String pkg = invoke.owner.substring(17); //invoke.owner.replace("org/lwjgl/opengl/", "");
-		for (Pair<Map<String, List<String>>, Map<String, Map<Integer, String>>> group : CONSTANTS) {
-			Map<String, List<String>> methodKeys = group.getLeft();
-			List<String> methodList = methodKeys.get(pkg);
-			if (methodList != null && methodList.contains(invoke.name)) {
-				Map<String, Map<Integer, String>> methodValues = group.getRight();
-				for (Entry<String, Map<Integer, String>> entry : methodValues.entrySet()) {
-					String key = entry.getKey();
-					Map<Integer, String> value = entry.getValue();
-					String constantValue = value.get(constant);
-					if (constantValue == null) continue;
+	private static IntTable<Expression> getConstants(MethodInsnNode invoke) {
+		Map<String, IntTable<Expression>> methods = METHODS.get(invoke.owner);
+		return methods == null ? null : methods.get(invoke.name);
+	}
 
-					InsnList instructions = new InsnList();
-					int i = -1;
-					do {
-						char operator = i == -1 ? 0 : constantValue.charAt(i);
-						int index1 = i + 1;
-						i = indexOf(OPERATORS, index1, constantValue);
-						int index2 = i == -1 ? constantValue.length() : i;
-						String name = constantValue.substring(index1, index2).trim();
-						instructions.add(new FieldInsnNode(Opcodes.GETSTATIC, "org/lwjgl/opengl/" + key, name, "I"));
-						switch (operator) {
-							case '|':
-								instructions.add(new InsnNode(Opcodes.IOR));
-								break;
-							case '&':
-								instructions.add(new InsnNode(Opcodes.IAND));
-								break;
-							case '^':
-								instructions.add(new InsnNode(Opcodes.IXOR));
-								break;
-						}
-					} while (i != -1);
-					return instructions;
-				}
-			}
+	public static InsnList getGLInsn(MethodInsnNode invoke, int constant) {
+		IntTable<Expression> constants = getConstants(invoke);
+		if (constants == null) {
+			return null;
 		}
-		return null;
+		Expression expression = constants.get(constant);
+		return expression == null ? null : expression.toInsns();
 	}
 
 	public static int indexOf(char[] ch, int fromIndex, String string) {
@@ -164,134 +152,209 @@ public final class GLConstants extends ClassVisitor {
 	}
 
 	// Private methods for initialization
-	private static List<Pair<Map<String, List<String>>, Map<String, Map<Integer, String>>>> getConstants(JSONArray jsonArray) {
-		if (jsonArray == null || jsonArray.isEmpty()) {
-			return Collections.emptyList();
+	private static Map<String, Map<String, IntTable<Expression>>> readMethods(DataInputStream in) throws IOException {
+		Expression[] expressions = new Expression[in.readInt()];
+		for (int i = 0; i < expressions.length; i++) {
+			String owner = in.readUTF();
+			String[] names = new String[in.readUnsignedByte()];
+			int[] opcodes = new int[names.length];
+			for (int j = 0; j < names.length; j++) {
+				names[j] = in.readUTF();
+				opcodes[j] = in.readUnsignedByte();
+			}
+			expressions[i] = new Expression(owner, names, opcodes);
 		}
-		List<Pair<Map<String, List<String>>, Map<String, Map<Integer, String>>>> list = new ArrayList<>();
-		for (int i = 0; i < jsonArray.length(); i++) {
-			JSONArray a = jsonArray.optJSONArray(i);
-			if (a == null || a.length() < 2) continue;
-			JSONObject methodKeys = a.optJSONObject(0);
-			JSONObject methodValues = a.optJSONObject(1);
-			if (methodKeys == null || methodValues == null) continue;
-
-			Map<String, List<String>> map = new HashMap<>();
-			Iterator<String> keys = methodKeys.keys();
-			while (keys.hasNext()) {
-				String key = keys.next();
-				JSONArray value = methodKeys.optJSONArray(key);
-				if (value == null) continue;
-				map.put(key, JSONUtil.toList(value));
+		List<IntTable<Expression>> tables = new ArrayList<>();
+		for (int i = in.readInt(); i > 0; i--) {
+			int[] keys = new int[in.readInt()];
+			Object[] values = new Object[keys.length];
+			for (int j = 0; j < keys.length; j++) {
+				keys[j] = in.readInt();
+				values[j] = expressions[in.readInt()];
 			}
-
-			Map<String, Map<Integer, String>> map2 = new HashMap<>();
-			Iterator<String> keys2 = methodValues.keys();
-			while (keys2.hasNext()) {
-				String key = keys2.next();
-				JSONObject value = methodValues.optJSONObject(key);
-				if (value == null) continue;
-				map2.put(key, JSONUtil.toMap(value));
+			tables.add(new IntTable<>(keys, values));
+		}
+		// Methods using the same groups of constants share one table
+		Map<String, Map<String, IntTable<Expression>>> methods = new HashMap<>();
+		for (int i = in.readInt(); i > 0; i--) {
+			String owner = in.readUTF();
+			Map<String, IntTable<Expression>> names = new HashMap<>();
+			for (int j = in.readInt(); j > 0; j--) {
+				String name = in.readUTF();
+				names.put(name, tables.get(in.readInt()));
 			}
-
-			list.add(Pair.of(map, map2));
+			methods.put(owner, names);
 		}
-		return list;
+		return methods;
 	}
 
-	private static List<String> getPackages(List<Pair<Map<String, List<String>>, Map<String, Map<Integer, String>>>> constants) {
-		if (constants == null || constants.isEmpty()) {
-			return Collections.emptyList();
+	private static IntTable<String> readKeyboard(DataInputStream in) throws IOException {
+		int[] keys = new int[in.readInt()];
+		Object[] values = new Object[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = in.readInt();
+			values[i] = in.readUTF();
 		}
-		List<String> list = new ArrayList<>();
-		for (Pair<Map<String, List<String>>, ?> pair : constants) {
-			Map<String, ?> methodKeys = pair.getLeft();
-			for (Entry<String, ?> entry : methodKeys.entrySet()) {
-				list.add("org/lwjgl/opengl/" + entry.getKey());
-			}
-		}
-		return list;
+		return new IntTable<>(keys, values);
+	}
+
+	/**
+	 * Replaces constants in every method of the class. Holds no state, so classes may be visited concurrently.
+	 */
+	public void visitClass(ClassNode node) {
+		if (!INIT) return;
+		VISITOR.visitClass(node);
 	}
 
 	@Override
 	protected void visitMethod(MethodNode node) {
 		if (!INIT) return;
-		InsnList instructions = node.instructions;
-		List<MethodInsnNode> glCalls = new ArrayList<>();
-		List<Pair<AbstractInsnNode, FieldInsnNode>> keyboardConstants = new ArrayList<>();
-		for (AbstractInsnNode insn : instructions) {
-			if (insn instanceof MethodInsnNode) {
-				MethodInsnNode invoke = (MethodInsnNode) insn;
-				if (PACKAGES != null && PACKAGES.contains(invoke.owner)) {
-					glCalls.add(invoke);
+		VISITOR.visitMethod(node);
+	}
+
+	/**
+	 * Replaces integer arguments of keyboard methods with <code>Keyboard</code> constants
+	 */
+	static final class KeyboardMatcher implements InsnMatcher {
+		@Override
+		public int[] getOpcodes() {
+			return new int[]{Opcodes.INVOKESTATIC};
+		}
+
+		@Override
+		public void match(MethodNode method, AbstractInsnNode insn, List<Runnable> edits) {
+			MethodInsnNode invoke = (MethodInsnNode) insn;
+			if (!invoke.owner.equals("org/lwjgl/input/Keyboard")) {
+				return;
+			}
+			if (invoke.name.equals("isKeyDown") || invoke.name.equals("getKeyName")) {
+				AbstractInsnNode iconst = invoke.getPrevious();
+				if (iconst == null) {
+					return;
 				}
-				if (invoke.owner.equals("org/lwjgl/input/Keyboard")) {
-					if (invoke.name.equals("isKeyDown") || invoke.name.equals("getKeyName")) {
-						AbstractInsnNode iconst = invoke.getPrevious();
-						if (iconst == null) {
-							continue;
-						}
-						Integer value = intValue(iconst);
-						if (value != null) {
-							FieldInsnNode getField = getKeyboardInsn(value);
-							if (getField != null) {
-								keyboardConstants.add(Pair.of(iconst, getField));
-							}
-						}
-					} else if (invoke.name.equals("getEventKey")) {
-						AbstractInsnNode iconst = invoke.getNext();
-						if (iconst == null) {
+				replaceKeyboardConstant(method, iconst, edits);
+			} else if (invoke.name.equals("getEventKey")) {
+				AbstractInsnNode iconst = invoke.getNext();
+				if (iconst == null) {
+					return;
+				}
+				AbstractInsnNode insn2 = iconst.getNext();
+				// INVOKE, ICONST, (ANY INSTRUCTION), IADD, ICMP
+				// or
+				// INVOKE, ICONST, ICMP
+				boolean hasCompare = false;
+				int count = 0;
+				while (insn2 != null && count < 3 && !hasCompare) {
+					if (count == 1 && insn2.getOpcode() != Opcodes.IADD)
+						break;
+					if (isICmp(insn2.getOpcode()))
+						hasCompare = true;
+					count++;
+					insn2 = insn2.getNext();
+				}
+				if (hasCompare) {
+					replaceKeyboardConstant(method, iconst, edits);
+				}
+			}
+		}
+
+		private static void replaceKeyboardConstant(MethodNode method, AbstractInsnNode iconst, List<Runnable> edits) {
+			Integer value = intValue(iconst);
+			if (value != null) {
+				FieldInsnNode getField = getKeyboardInsn(value);
+				if (getField != null) {
+					edits.add(() -> method.instructions.set(iconst, getField));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Replaces integer arguments of OpenGL methods with OpenGL constants
+	 */
+	static final class GLCallMatcher implements InsnMatcher {
+		@Override
+		public int[] getOpcodes() {
+			return new int[]{Opcodes.INVOKESTATIC};
+		}
+
+		@Override
+		public void match(MethodNode method, AbstractInsnNode insn, List<Runnable> edits) {
+			MethodInsnNode invoke = (MethodInsnNode) insn;
+			IntTable<Expression> constants = getConstants(invoke);
+			if (constants == null) {
+				return;
+			}
+			edits.add(() -> {
+				InsnList instructions = method.instructions;
+				IdentifyCall identifiedCall = new IdentifyCall(invoke);
+				for (AbstractInsnNode[] insns : identifiedCall.getArguments()) {
+					for (AbstractInsnNode arg : insns) {
+						if (arg == null) {
 							continue;
 						}
-						AbstractInsnNode insn2 = iconst.getNext();
-						// INVOKE, ICONST, (ANY INSTRUCTION), IADD, ICMP
-						// or
-						// INVOKE, ICONST, ICMP
-						boolean hasCompare = false;
-						int count = 0;
-						while (insn2 != null && count < 3 && !hasCompare) {
-							if (count == 1 && insn2.getOpcode() != Opcodes.IADD)
-								break;
-							if (isICmp(insn2.getOpcode()))
-								hasCompare = true;
-							count++;
-							insn2 = insn2.getNext();
-						}
-						if (hasCompare) {
-							Integer value = intValue(iconst);
-							if (value != null) {
-								FieldInsnNode getField = getKeyboardInsn(value);
-								if (getField != null) {
-									keyboardConstants.add(Pair.of(iconst, getField));
-								}
+						Integer intValue = intValue(arg);
+						if (intValue != null) {
+							Expression expression = constants.get(intValue);
+							if (expression != null) {
+								instructions.insert(arg, expression.toInsns());
+								instructions.remove(arg);
 							}
 						}
 					}
 				}
-			}
+			});
 		}
+	}
+
+	/**
+	 * Constant expression split into fields and the operators combining them
+	 */
+	private static final class Expression {
+		private final String owner;
+		private final String[] names;
+		/**
+		 * Opcode applied after loading each field, 0 for the first field
+		 */
+		private final int[] opcodes;
 
-		for (Pair<AbstractInsnNode, FieldInsnNode> pair : keyboardConstants) {
-			instructions.set(pair.getLeft(), pair.getRight());
+		private Expression(String owner, String[] names, int[] opcodes) {
+			this.owner = owner;
+			this.names = names;
+			this.opcodes = opcodes;
 		}
 
-		for (MethodInsnNode invoke : glCalls) {
-			IdentifyCall identifiedCall = new IdentifyCall(invoke);
-			for (AbstractInsnNode[] insns : identifiedCall.getArguments()) {
-				for (AbstractInsnNode insn : insns) {
-					if (insn == null) {
-						continue;
-					}
-					Integer intValue = intValue(insn);
-					if (intValue != null) {
-						InsnList newinsns = getGLInsn(invoke, intValue);
-						if (newinsns != null) {
-							instructions.insert(insn, newinsns);
-							instructions.remove(insn);
-						}
-					}
+		private InsnList toInsns() {
+			InsnList instructions = new InsnList();
+			for (int i = 0; i < names.length; i++) {
+				instructions.add(new FieldInsnNode(Opcodes.GETSTATIC, owner, names[i], "I"));
+				if (opcodes[i] != 0) {
+					instructions.add(new InsnNode(opcodes[i]));
 				}
 			}
+			return instructions;
+		}
+	}
+
+	/**
+	 * Immutable map with int keys, looked up by binary search without boxing
+	 */
+	private static final class IntTable<V> {
+		private final int[] keys;
+		private final Object[] values;
+
+		/**
+		 * @param keys sorted keys, as written by the table compiler
+		 */
+		private IntTable(int[] keys, Object[] values) {
+			this.keys = keys;
+			this.values = values;
+		}
+
+		@SuppressWarnings("unchecked")
+		private V get(int key) {
+			int i = Arrays.binarySearch(keys, key);
+			return i < 0 ? null : (V) values[i];
 		}
 	}
 }
@@ -0,0 +1,27 @@
+package org.mcphackers.mcp.tools.injector;
+
+import java.util.List;
+
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+
+/**
+ * Instruction-level rewrite run by a {@link FusedInsnVisitor}
+ */
+public interface InsnMatcher {
+	/**
+	 * @return opcodes of instructions this matcher may rewrite
+	 */
+	int[] getOpcodes();
+
+	/**
+	 * Called for every instruction with one of the matcher's opcodes.
+	 * The instruction list must not be modified here, changes are added to <code>edits</code> instead
+	 * and applied once the whole method has been visited.
+	 *
+	 * @param method method being visited
+	 * @param insn instruction with one of the matcher's opcodes
+	 * @param edits changes of this matcher to the method
+	 */
+	void match(MethodNode method, AbstractInsnNode insn, List<Runnable> edits);
+}
@@ -0,0 +1,106 @@
+package org.mcphackers.mcp.tools.injector;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.mcphackers.mcp.tools.NamePool;
+import org.mcphackers.mcp.tools.ZipIndex;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.tree.ClassNode;
+
+/**
+ * Reads classes of a jar into class nodes in parallel.
+ * Entries are read from a {@link ZipIndex} and inflated by the thread parsing them,
+ * so the raw bytes of a class are only held while it's being parsed rather than for the whole jar.
+ * Every class of an original jar is remapped, so those are parsed right away.
+ * Classes of a directory are read into a {@link LazyClassList} instead and parsed once they're accessed.
+ * Names and descriptors go through a {@link NamePool}.
+ */
+public final class JarClassReader {
+	private JarClassReader() {
+	}
+
+	/**
+	 * @param names pool for names and descriptors read from the constant pools
+	 * @return class nodes in the order of the jar's central directory
+	 */
+	public static List<ClassNode> readJar(Path jar, NamePool names) throws IOException {
+		try (ZipIndex zip = new ZipIndex(jar)) {
+			List<String> classNames = new ArrayList<>();
+			for (String name : zip.getNames()) {
+				if (name.endsWith(".class")) {
+					classNames.add(name);
+				}
+			}
+			try {
+				return classNames.parallelStream().map(name -> {
+					try {
+						ClassNode node = new ClassNode();
+						new PooledClassReader(zip.getBytes(name), names).accept(node, 0);
+						return node;
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				}).collect(Collectors.toList());
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+		}
+	}
+
+	/**
+	 * @param needsCode whether a class needs its method bodies, other classes are only parsed for their declarations
+	 * @return classes of the directory in the order of their paths, parsed when they're accessed
+	 */
+	public static LazyClassList readDirectory(Path dir, NamePool names, Predicate<String> needsCode) throws IOException {
+		List<Path> files;
+		try (Stream<Path> paths = Files.walk(dir)) {
+			files = paths.filter(path -> path.toString().endsWith(".class") && Files.isRegularFile(path)).sorted().collect(Collectors.toList());
+		}
+		List<byte[]> bytes;
+		try {
+			bytes = files.parallelStream().map(path -> {
+				try {
+					return Files.readAllBytes(path);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}).collect(Collectors.toList());
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		LazyClassList classes = new LazyClassList(names);
+		for (int i = 0; i < files.size(); i++) {
+			String fileName = dir.relativize(files.get(i)).toString().replace('\\', '/');
+			String name = fileName.substring(0, fileName.length() - ".class".length());
+			classes.addRaw(bytes.get(i), needsCode.test(name) ? 0 : LazyClassList.DECLARATIONS);
+		}
+		return classes;
+	}
+
+	/**
+	 * Constant pool strings of a class reader are only shared within one class, pooling them shares them across the jar
+	 */
+	static final class PooledClassReader extends ClassReader {
+		private final NamePool names;
+
+		PooledClassReader(byte[] bytes, NamePool names) {
+			super(bytes);
+			this.names = names;
+		}
+
+		@Override
+		public String readUTF8(int offset, char[] charBuffer) {
+			String s = super.readUTF8(offset, charBuffer);
+			// The super constructor already reads bootstrap method names, those are pooled when they're read again
+			return names == null ? s : names.intern(s);
+		}
+	}
+}
@@ -0,0 +1,111 @@
+package org.mcphackers.mcp.tools.injector;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.stream.IntStream;
+
+import org.mcphackers.mcp.tools.NamePool;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.tree.ClassNode;
+
+/**
+ * Classes held as raw class files until they're accessed. A class is parsed into a class node the first time
+ * it's read from the list and its bytes are released afterwards. Each class has its own parsing options,
+ * so classes which are never written out may be parsed without method bodies.
+ * Classes may be read by several threads at once.
+ */
+public final class LazyClassList extends AbstractList<ClassNode> implements RandomAccess {
+	/**
+	 * Parsing options for classes which are only needed for their declarations
+	 */
+	public static final int DECLARATIONS = ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES;
+
+	private final NamePool names;
+	/**
+	 * Either a class node or the {@link RawClass} it's parsed from
+	 */
+	private final List<Object> slots = new ArrayList<>();
+
+	public LazyClassList(NamePool names) {
+		this.names = names;
+	}
+
+	private static final class RawClass {
+		private final byte[] bytes;
+		private final int parsingOptions;
+
+		private RawClass(byte[] bytes, int parsingOptions) {
+			this.bytes = bytes;
+			this.parsingOptions = parsingOptions;
+		}
+	}
+
+	/**
+	 * @param bytes class file
+	 * @param parsingOptions {@link ClassReader} parsing options used once the class is accessed
+	 */
+	public synchronized void addRaw(byte[] bytes, int parsingOptions) {
+		slots.add(new RawClass(bytes, parsingOptions));
+		modCount++;
+	}
+
+	/**
+	 * Parses every class which hasn't been accessed yet, in parallel
+	 */
+	public void load() {
+		int size = size();
+		IntStream.range(0, size).parallel().forEach(this::get);
+	}
+
+	@Override
+	public ClassNode get(int index) {
+		Object slot;
+		synchronized (this) {
+			slot = slots.get(index);
+		}
+		if (slot instanceof ClassNode) {
+			return (ClassNode) slot;
+		}
+		// Parsed outside the lock, so threads reading different classes don't wait for each other
+		RawClass raw = (RawClass) slot;
+		ClassNode node = new ClassNode();
+		new JarClassReader.PooledClassReader(raw.bytes, names).accept(node, raw.parsingOptions);
+		synchronized (this) {
+			Object current = slots.get(index);
+			if (current != raw) {
+				// Parsed by another thread or replaced in the meantime
+				return current instanceof ClassNode ? (ClassNode) current : get(index);
+			}
+			slots.set(index, node);
+			return node;
+		}
+	}
+
+	@Override
+	public synchronized ClassNode set(int index, ClassNode element) {
+		ClassNode previous = get(index);
+		slots.set(index, element);
+		return previous;
+	}
+
+	@Override
+	public synchronized void add(int index, ClassNode element) {
+		slots.add(index, element);
+		modCount++;
+	}
+
+	@Override
+	public synchronized ClassNode remove(int index) {
+		ClassNode previous = get(index);
+		slots.remove(index);
+		modCount++;
+		return previous;
+	}
+
+	@Override
+	public synchronized int size() {
+		return slots.size();
+	}
+}
@@ -0,0 +1,154 @@
+package org.mcphackers.mcp.tools.injector;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.mcphackers.mcp.tools.Archive;
+import org.mcphackers.mcp.tools.ZipIndex;
+import org.mcphackers.rdi.injector.data.ClassStorage;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.tree.ClassNode;
+
+/**
+ * Classes of a {@link ClassStorage}, each serialized once, and the resources of the jars they were read from.
+ * The decompiler reads classes from memory while the same bytes are written to the remapped jar,
+ * so classes aren't deflated and inflated again between remapping and decompiling.
+ * Resources are read from the original jars when they're needed.
+ */
+public final class RemappedJar implements Archive, Closeable {
+	private final Map<String, byte[]> classes;
+	private final Map<String, ZipIndex> resources = new LinkedHashMap<>();
+	private final List<ZipIndex> jars = new ArrayList<>();
+	private final List<String> names = new ArrayList<>();
+
+	/**
+	 * Serializes every class of the storage, the class nodes aren't referenced afterwards
+	 *
+	 * @param jars jars the storage was read from, resources of later jars replace those of earlier ones
+	 */
+	public RemappedJar(ClassStorage storage, List<Path> jars) throws IOException {
+		List<ClassNode> nodes = storage.getClasses();
+		Map<String, byte[]> serialized = new ConcurrentHashMap<>();
+		nodes.parallelStream().forEach(node -> {
+			ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+			node.accept(writer);
+			serialized.put(node.name + ".class", writer.toByteArray());
+		});
+		this.classes = serialized;
+		for (ClassNode node : nodes) {
+			names.add(node.name + ".class");
+		}
+		try {
+			for (Path jar : jars) {
+				ZipIndex zip = new ZipIndex(jar);
+				this.jars.add(zip);
+				for (String name : zip.getNames()) {
+					if (!name.endsWith("/") && !name.endsWith(".class") && !isSignature(name)) {
+						resources.put(name, zip);
+					}
+				}
+			}
+		} catch (IOException e) {
+			close();
+			throw e;
+		}
+		names.addAll(resources.keySet());
+	}
+
+	/**
+	 * Signatures of the original jars don't match remapped classes, a signed jar on the classpath would fail to load
+	 */
+	private static boolean isSignature(String name) {
+		if (!name.startsWith("META-INF/") || name.indexOf('/', 9) != -1) {
+			return false;
+		}
+		return name.endsWith(".SF") || name.endsWith(".DSA") || name.endsWith(".RSA") || name.endsWith(".EC");
+	}
+
+	@Override
+	public List<String> getNames() {
+		return Collections.unmodifiableList(names);
+	}
+
+	@Override
+	public int getSize(String name) {
+		byte[] bytes = classes.get(name);
+		if (bytes != null) {
+			return bytes.length;
+		}
+		ZipIndex zip = resources.get(name);
+		return zip == null ? -1 : zip.getSize(name);
+	}
+
+	@Override
+	public byte[] getBytes(String name) throws IOException {
+		byte[] bytes = classes.get(name);
+		if (bytes != null) {
+			return bytes;
+		}
+		ZipIndex zip = resources.get(name);
+		return zip == null ? null : zip.getBytes(name);
+	}
+
+	/**
+	 * Writes all entries uncompressed. The jar is read back by later decompiles and put on the classpath of the game,
+	 * neither of which benefits from compression.
+	 */
+	public void write(Path jar) throws IOException {
+		Path parent = jar.toAbsolutePath().getParent();
+		Files.createDirectories(parent);
+		Path tempFile = Files.createTempFile(parent, "remapped", ".tmp");
+		try {
+			try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(tempFile))) {
+				out.setMethod(ZipOutputStream.STORED);
+				for (String name : names) {
+					byte[] bytes = getBytes(name);
+					CRC32 crc = new CRC32();
+					crc.update(bytes);
+					ZipEntry entry = new ZipEntry(name);
+					entry.setSize(bytes.length);
+					entry.setCompressedSize(bytes.length);
+					entry.setCrc(crc.getValue());
+					out.putNextEntry(entry);
+					out.write(bytes);
+					out.closeEntry();
+				}
+			}
+			Files.move(tempFile, jar, StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(tempFile);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		IOException failure = null;
+		for (ZipIndex zip : jars) {
+			try {
+				zip.close();
+			} catch (IOException e) {
+				if (failure == null) {
+					failure = e;
+				} else {
+					failure.addSuppressed(e);
+				}
+			}
+		}
+		jars.clear();
+		if (failure != null) {
+			throw failure;
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package org.mcphackers.mcp.tools.injector;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+import org.mcphackers.rdi.injector.data.ClassStorage;
+import org.mcphackers.rdi.injector.transform.Injection;
+import org.objectweb.asm.tree.ClassNode;
+
+/**
+ * Runs class transforms on a {@link ClassStorage} in parallel.
+ * Consecutive per-class steps are applied to chunks of classes on a fork join pool, one pass per chunk.
+ * Whole-storage steps see every class and act as barriers between per-class steps.
+ */
+public class TransformPipeline {
+	private final List<Step> steps = new ArrayList<>();
+	private final ForkJoinPool pool;
+
+	public TransformPipeline() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	public TransformPipeline(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Adds a transform which only reads and modifies the classes of the storage it's given.
+	 * It's applied to storages containing a chunk of classes each.
+	 */
+	public TransformPipeline perClass(Injection transform) {
+		steps.add(new Step(transform, true));
+		return this;
+	}
+
+	/**
+	 * Adds a transform which only reads and modifies the class it's given
+	 */
+	public TransformPipeline eachClass(Consumer<ClassNode> transform) {
+		return perClass(storage -> {
+			for (ClassNode node : storage) {
+				transform.accept(node);
+			}
+		});
+	}
+
+	/**
+	 * Adds a transform which needs every class of the storage, or isn't known to only touch the classes it's given.
+	 * It runs on the whole storage on the calling thread, after every earlier step and before any later one.
+	 */
+	public TransformPipeline wholeStorage(Injection transform) {
+		steps.add(new Step(transform, false));
+		return this;
+	}
+
+	public void run(ClassStorage storage) {
+		List<Injection> perClass = new ArrayList<>();
+		for (Step step : steps) {
+			if (step.perClass) {
+				perClass.add(step.transform);
+				continue;
+			}
+			runPerClass(storage, perClass);
+			perClass.clear();
+			step.transform.transform(storage);
+		}
+		runPerClass(storage, perClass);
+	}
+
+	private void runPerClass(ClassStorage storage, List<Injection> transforms) {
+		if (transforms.isEmpty()) {
+			return;
+		}
+		List<ClassNode> classes = storage.getClasses();
+		// A few chunks per thread so that uneven chunks even out
+		int chunkCount = Math.max(1, Math.min(classes.size(), pool.getParallelism() * 4));
+		List<List<ClassNode>> chunks = new ArrayList<>(chunkCount);
+		for (int i = 0; i < chunkCount; i++) {
+			chunks.add(new ArrayList<>());
+		}
+		for (int i = 0; i < classes.size(); i++) {
+			chunks.get(i % chunkCount).add(classes.get(i));
+		}
+		List<Injection> chunkTransforms = Collections.unmodifiableList(new ArrayList<>(transforms));
+		pool.submit(() -> chunks.parallelStream().forEach(chunk -> {
+			ClassStorage chunkStorage = new ClassStorage(chunk);
+			for (Injection transform : chunkTransforms) {
+				transform.transform(chunkStorage);
+			}
+		})).join();
+	}
+
+	private static final class Step {
+		private final Injection transform;
+		private final boolean perClass;
+
+		private Step(Injection transform, boolean perClass) {
+			this.transform = transform;
+			this.perClass = perClass;
+		}
+	}
+}
@@ -0,0 +1,146 @@
+package org.mcphackers.mcp.tools.source;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import codechicken.diffpatch.patch.Patcher;
+import codechicken.diffpatch.util.PatchFile;
+import codechicken.diffpatch.util.PatchMode;
+
+/**
+ * Unified diff split into patches per file, so that every file can be patched while it's being written.
+ * Each file is patched by DiffPatch's patcher in offset mode, same as the patch operation applies whole directories.
+ */
+public class Patch {
+	private static final String DEV_NULL = "/dev/null";
+
+	private final String aPrefix;
+	private final String bPrefix;
+	private final Map<String, FilePatch> files = new LinkedHashMap<>();
+
+	/**
+	 * @param aPrefix prefix of original file names or <code>null</code> if they have none
+	 * @param bPrefix prefix of patched file names or <code>null</code> if they have none
+	 */
+	public Patch(Path patchFile, String aPrefix, String bPrefix) throws IOException {
+		this.aPrefix = aPrefix;
+		this.bPrefix = bPrefix;
+		List<String> lines = Files.readAllLines(patchFile, StandardCharsets.UTF_8);
+		FilePatch current = null;
+		for (int i = 0; i < lines.size(); i++) {
+			String line = lines.get(i);
+			if (line.startsWith("--- ") && i + 1 < lines.size() && lines.get(i + 1).startsWith("+++ ")) {
+				String oldName = getFileName(line, this.aPrefix);
+				String newName = getFileName(lines.get(i + 1), this.bPrefix);
+				boolean created = oldName.equals(DEV_NULL);
+				boolean deleted = newName.equals(DEV_NULL);
+				current = new FilePatch(deleted ? oldName : newName, created, deleted);
+				files.put(current.name, current);
+			} else if (line.startsWith("diff ")) {
+				// Header of the next file, its name follows in the --- and +++ lines
+				current = null;
+				continue;
+			}
+			if (current != null) {
+				current.lines.add(line);
+			}
+		}
+	}
+
+	private static String getFileName(String line, String prefix) {
+		String name = line.substring(4);
+		int tab = name.indexOf('\t');
+		if (tab != -1) {
+			name = name.substring(0, tab);
+		}
+		name = name.trim().replace('\\', '/');
+		if (prefix != null && !prefix.isEmpty() && name.startsWith(prefix)) {
+			name = name.substring(prefix.length());
+		}
+		return name;
+	}
+
+	/**
+	 * @return names of all files affected by this patch, relative to the source directory
+	 */
+	public List<String> getFiles() {
+		return new ArrayList<>(files.keySet());
+	}
+
+	public boolean hasFile(String name) {
+		return files.containsKey(name);
+	}
+
+	public boolean isCreated(String name) {
+		FilePatch filePatch = files.get(name);
+		return filePatch != null && filePatch.created;
+	}
+
+	public boolean isDeleted(String name) {
+		FilePatch filePatch = files.get(name);
+		return filePatch != null && filePatch.deleted;
+	}
+
+	/**
+	 * Applies every hunk for <code>name</code> which could be matched.
+	 *
+	 * @param name file name relative to the source directory
+	 * @param content original file content, empty for created files
+	 * @param failed receives descriptions of hunks which could not be applied
+	 * @return patched content
+	 */
+	public String apply(String name, String content, List<String> failed) {
+		FilePatch filePatch = files.get(name);
+		if (filePatch == null) {
+			return content;
+		}
+		String lineSeparator = content.contains("\r\n") ? "\r\n" : "\n";
+		boolean trailingNewline = content.isEmpty() || content.endsWith("\n");
+		List<String> lines = new ArrayList<>();
+		if (!content.isEmpty()) {
+			Collections.addAll(lines, content.split("\r?\n", -1));
+			if (trailingNewline) {
+				lines.remove(lines.size() - 1);
+			}
+		}
+		Patcher patcher = new Patcher(PatchFile.fromLines(name, filePatch.lines, true), lines);
+		patcher.patch(PatchMode.OFFSET);
+		patcher.getResults().forEach(result -> {
+			if (!result.success) {
+				failed.add(name + ": " + result.summary());
+			}
+		});
+		List<String> patched = patcher.lines;
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < patched.size(); i++) {
+			sb.append(patched.get(i));
+			if (i < patched.size() - 1 || trailingNewline) {
+				sb.append(lineSeparator);
+			}
+		}
+		return sb.toString();
+	}
+
+	private static class FilePatch {
+		private final String name;
+		private final boolean created;
+		private final boolean deleted;
+		/**
+		 * Lines of the patch for this file, starting with its --- and +++ lines
+		 */
+		private final List<String> lines = new ArrayList<>();
+
+		private FilePatch(String name, boolean created, boolean deleted) {
+			this.name = name;
+			this.created = created;
+			this.deleted = deleted;
+		}
+	}
+}
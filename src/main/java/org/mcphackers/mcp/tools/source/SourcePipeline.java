@@ -0,0 +1,210 @@
+package org.mcphackers.mcp.tools.source;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Post-processes decompiled sources as they are saved and writes each file once to every output.
+ * Sources are patched, modified by source adapters and then written to the source jar, the original source directory and the source directory.
+ * Saving blocks when the writer falls behind, so only a bounded amount of sources is held in memory.
+ */
+public class SourcePipeline extends SourceSaver {
+	private static final int QUEUE_SIZE = 256;
+	private static final Entry END = new Entry(null, null, null);
+
+	private final Path sourceDir;
+	private final Patch patch;
+	private final List<? extends Source> adapters;
+	private final ZipOutputStream sourceJar;
+	private final BlockingQueue<Entry> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+	private final Set<String> saved = new HashSet<>();
+	private final List<String> patchFailures = new ArrayList<>();
+	private final Thread writer;
+	private volatile Throwable failure;
+	private boolean partial;
+
+	/**
+	 * @param destination directory for original sources
+	 * @param sourceJar jar containing all sources or <code>null</code> to skip it
+	 * @param sourceDir directory for modifiable sources or <code>null</code> to skip it
+	 * @param patch patch to apply or <code>null</code>
+	 * @param adapters source adapters to apply after patching
+	 */
+	public SourcePipeline(Path destination, Path sourceJar, Path sourceDir, Patch patch, List<? extends Source> adapters) throws IOException {
+		super(destination);
+		this.sourceDir = sourceDir;
+		this.patch = patch;
+		this.adapters = adapters;
+		this.sourceJar = sourceJar == null ? null : new ZipOutputStream(Files.newOutputStream(sourceJar));
+		if (this.sourceJar != null) {
+			// Only read by IDEs for attaching sources, fast compression is enough
+			this.sourceJar.setLevel(Deflater.BEST_SPEED);
+		}
+		this.writer = new Thread(this::write, "Source writer");
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	@Override
+	public void saveSource(String name, String content) throws IOException {
+		enqueue(new Entry(name, content, null));
+	}
+
+	@Override
+	public void saveResource(String name, byte[] bytes) throws IOException {
+		enqueue(new Entry(name, null, bytes));
+	}
+
+	/**
+	 * Marks that only some of the sources are saved. Files of the patch which weren't saved are then neither created nor reported as missing.
+	 */
+	public void setPartial(boolean partial) {
+		this.partial = partial;
+	}
+
+	/**
+	 * @return descriptions of patch hunks which failed to apply, available after closing
+	 */
+	public List<String> getPatchFailures() {
+		return patchFailures;
+	}
+
+	private void enqueue(Entry entry) throws IOException {
+		if (failure != null) {
+			throw new IOException(failure);
+		}
+		try {
+			queue.put(entry);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+	}
+
+	private void write() {
+		while (true) {
+			Entry entry;
+			try {
+				entry = queue.take();
+			} catch (InterruptedException e) {
+				failure = e;
+				return;
+			}
+			if (entry == END) {
+				return;
+			}
+			if (failure != null) {
+				// Keep draining so that saving doesn't block
+				continue;
+			}
+			try {
+				process(entry.name, entry.content, entry.bytes);
+			} catch (Throwable t) {
+				failure = t;
+			}
+		}
+	}
+
+	private void process(String name, String content, byte[] bytes) throws IOException {
+		if (!saved.add(name)) {
+			return;
+		}
+		if (content != null) {
+			if (patch != null) {
+				if (patch.isDeleted(name)) {
+					return;
+				}
+				content = patch.apply(name, content, patchFailures);
+			}
+			if (name.endsWith(".java") && !adapters.isEmpty()) {
+				String path = destination.resolve(name).toString();
+				String className = path.substring(0, path.length() - 5);
+				StringBuilder source = new StringBuilder(content);
+				for (Source adapter : adapters) {
+					adapter.apply(className, source);
+				}
+				content = source.toString();
+			}
+			bytes = content.getBytes(StandardCharsets.UTF_8);
+		}
+		if (sourceJar != null) {
+			sourceJar.putNextEntry(new ZipEntry(name));
+			sourceJar.write(bytes);
+			sourceJar.closeEntry();
+		}
+		writeFile(destination.resolve(name), bytes);
+		if (sourceDir != null) {
+			writeFile(sourceDir.resolve(name), bytes);
+		}
+	}
+
+	private static void writeFile(Path file, byte[] bytes) throws IOException {
+		Files.createDirectories(file.getParent());
+		Files.write(file, bytes);
+	}
+
+	/**
+	 * Waits for all queued files to be written, then adds files created by the patch
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			queue.put(END);
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			writer.interrupt();
+			closeSourceJar();
+			throw new InterruptedIOException();
+		}
+		try {
+			if (failure == null && patch != null && !partial) {
+				for (String name : patch.getFiles()) {
+					if (saved.contains(name)) {
+						continue;
+					}
+					if (patch.isCreated(name)) {
+						process(name, "", null);
+					} else if (!patch.isDeleted(name)) {
+						patchFailures.add(name + ": file not found");
+					}
+				}
+			}
+		} finally {
+			closeSourceJar();
+		}
+		if (failure != null) {
+			throw new IOException(failure);
+		}
+	}
+
+	private void closeSourceJar() throws IOException {
+		if (sourceJar != null) {
+			sourceJar.close();
+		}
+	}
+
+	private static class Entry {
+		private final String name;
+		private final String content;
+		private final byte[] bytes;
+
+		private Entry(String name, String content, byte[] bytes) {
+			this.name = name;
+			this.content = content;
+			this.bytes = bytes;
+		}
+	}
+}
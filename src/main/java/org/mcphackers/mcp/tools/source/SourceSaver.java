@@ -0,0 +1,40 @@
+package org.mcphackers.mcp.tools.source;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Receives decompiled sources and resources. By default every file is written to the destination directory.
+ */
+public class SourceSaver implements Closeable {
+	protected final Path destination;
+
+	public SourceSaver(Path destination) {
+		this.destination = destination;
+	}
+
+	/**
+	 * @param name path of the source file relative to the destination
+	 * @param content decompiled source
+	 */
+	public void saveSource(String name, String content) throws IOException {
+		saveResource(name, content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * @param name path of the resource relative to the destination
+	 * @param bytes contents of the resource
+	 */
+	public void saveResource(String name, byte[] bytes) throws IOException {
+		Path file = destination.resolve(name);
+		Files.createDirectories(file.getParent());
+		Files.write(file, bytes);
+	}
+
+	@Override
+	public void close() throws IOException {
+	}
+}
@@ -0,0 +1,218 @@
+package org.mcphackers.mcp.tablegen;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Compiles <code>gl_constants.json</code> into the binary tables read by <code>GLConstants</code>, so the json isn't parsed at runtime.
+ * <p>
+ * Layout, all integers big endian and strings in modified UTF-8:
+ * <pre>
+ * int version
+ * int expressions, each: utf owner, byte fields, each: utf name, byte opcode applied after loading it (0 for none)
+ * int tables, each: int constants sorted by value, each: int value, int expression
+ * int owners, each: utf owner, int methods, each: utf name, int table
+ * int keyboard constants sorted by value, each: int value, utf name
+ * </pre>
+ */
+public final class GLConstantsCompiler {
+	/**
+	 * Must match the version <code>GLConstants</code> reads
+	 */
+	private static final int VERSION = 1;
+	private static final String GL_PACKAGE = "org/lwjgl/opengl/";
+	private static final int IAND = 0x7e;
+	private static final int IOR = 0x80;
+	private static final int IXOR = 0x82;
+
+	private final List<String> expressions = new ArrayList<>();
+	private final Map<String, Integer> expressionIds = new HashMap<>();
+	private final List<TreeMap<Integer, Integer>> tables = new ArrayList<>();
+	private final Map<String, Map<String, Integer>> methods = new TreeMap<>();
+
+	/**
+	 * @param args json file and binary table to write
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			throw new IllegalArgumentException("Usage: GLConstantsCompiler <gl_constants.json> <gl_constants.bin>");
+		}
+		JSONObject json = new JSONObject(new String(Files.readAllBytes(Paths.get(args[0])), StandardCharsets.UTF_8));
+		GLConstantsCompiler compiler = new GLConstantsCompiler();
+		compiler.addMethods(json.optJSONArray("CONSTANTS"));
+		Path output = Paths.get(args[1]);
+		Files.createDirectories(output.toAbsolutePath().getParent());
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(output)))) {
+			compiler.write(out, new TreeMap<>(toMap(json.optJSONObject("CONSTANTS_KEYBOARD"))));
+		}
+	}
+
+	private static Map<Integer, String> toMap(JSONObject object) {
+		if (object == null) {
+			return Collections.emptyMap();
+		}
+		Map<Integer, String> map = new HashMap<>();
+		for (String key : object.keySet()) {
+			String value = object.optString(key, null);
+			if (value == null) continue;
+			try {
+				map.put(Integer.parseInt(key), value);
+			} catch (NumberFormatException ignored) {
+			}
+		}
+		return map;
+	}
+
+	/**
+	 * Resolves constants of each method the same way <code>GLConstants</code> did when it read the json itself
+	 */
+	private void addMethods(JSONArray jsonArray) {
+		if (jsonArray == null || jsonArray.isEmpty()) {
+			return;
+		}
+		// Groups of constants each method may use, in order of the groups in the json
+		Map<String, Map<String, List<Integer>>> methodGroups = new HashMap<>();
+		List<Map<Integer, Integer>> groups = new ArrayList<>();
+		for (int i = 0; i < jsonArray.length(); i++) {
+			JSONArray a = jsonArray.optJSONArray(i);
+			if (a == null || a.length() < 2) continue;
+			JSONObject methodKeys = a.optJSONObject(0);
+			JSONObject methodValues = a.optJSONObject(1);
+			if (methodKeys == null || methodValues == null) continue;
+
+			Map<String, Map<Integer, String>> values = new HashMap<>();
+			Iterator<String> keys2 = methodValues.keys();
+			while (keys2.hasNext()) {
+				String key = keys2.next();
+				JSONObject value = methodValues.optJSONObject(key);
+				if (value == null) continue;
+				values.put(key, toMap(value));
+			}
+			// A constant resolves to the first class of the group which defines it
+			Map<Integer, Integer> group = new HashMap<>();
+			for (Entry<String, Map<Integer, String>> entry : values.entrySet()) {
+				for (Entry<Integer, String> constant : entry.getValue().entrySet()) {
+					if (!group.containsKey(constant.getKey())) {
+						group.put(constant.getKey(), getExpression(GL_PACKAGE + entry.getKey(), constant.getValue()));
+					}
+				}
+			}
+			int groupIndex = groups.size();
+			groups.add(group);
+
+			Iterator<String> keys = methodKeys.keys();
+			while (keys.hasNext()) {
+				String key = keys.next();
+				JSONArray value = methodKeys.optJSONArray(key);
+				if (value == null) continue;
+				Map<String, List<Integer>> names = methodGroups.computeIfAbsent(GL_PACKAGE + key, k -> new HashMap<>());
+				for (int j = 0; j < value.length(); j++) {
+					String name = value.optString(j, null);
+					if (name == null) continue;
+					names.computeIfAbsent(name, k -> new ArrayList<>()).add(groupIndex);
+				}
+			}
+		}
+		// Methods using the same groups share one table
+		Map<List<Integer>, Integer> tableIds = new HashMap<>();
+		for (Entry<String, Map<String, List<Integer>>> owner : methodGroups.entrySet()) {
+			Map<String, Integer> names = new TreeMap<>();
+			for (Entry<String, List<Integer>> method : owner.getValue().entrySet()) {
+				names.put(method.getKey(), tableIds.computeIfAbsent(method.getValue(), groupIndices -> {
+					TreeMap<Integer, Integer> merged = new TreeMap<>();
+					for (int groupIndex : groupIndices) {
+						for (Entry<Integer, Integer> constant : groups.get(groupIndex).entrySet()) {
+							merged.putIfAbsent(constant.getKey(), constant.getValue());
+						}
+					}
+					tables.add(merged);
+					return tables.size() - 1;
+				}));
+			}
+			methods.put(owner.getKey(), names);
+		}
+	}
+
+	private int getExpression(String owner, String value) {
+		return expressionIds.computeIfAbsent(owner + ' ' + value, k -> {
+			expressions.add(k);
+			return expressions.size() - 1;
+		});
+	}
+
+	private void write(DataOutputStream out, Map<Integer, String> keyboard) throws IOException {
+		out.writeInt(VERSION);
+		out.writeInt(expressions.size());
+		for (String expression : expressions) {
+			int space = expression.indexOf(' ');
+			out.writeUTF(expression.substring(0, space));
+			writeExpression(out, expression.substring(space + 1));
+		}
+		out.writeInt(tables.size());
+		for (TreeMap<Integer, Integer> table : tables) {
+			out.writeInt(table.size());
+			for (Entry<Integer, Integer> constant : table.entrySet()) {
+				out.writeInt(constant.getKey());
+				out.writeInt(constant.getValue());
+			}
+		}
+		out.writeInt(methods.size());
+		for (Entry<String, Map<String, Integer>> owner : methods.entrySet()) {
+			out.writeUTF(owner.getKey());
+			out.writeInt(owner.getValue().size());
+			for (Entry<String, Integer> method : owner.getValue().entrySet()) {
+				out.writeUTF(method.getKey());
+				out.writeInt(method.getValue());
+			}
+		}
+		out.writeInt(keyboard.size());
+		for (Entry<Integer, String> constant : keyboard.entrySet()) {
+			out.writeInt(constant.getKey());
+			out.writeUTF(constant.getValue());
+		}
+	}
+
+	/**
+	 * Splits an expression such as <code>GL_DEPTH_BUFFER_BIT | GL_COLOR_BUFFER_BIT</code> into fields and operators
+	 */
+	private static void writeExpression(DataOutputStream out, String value) throws IOException {
+		List<String> names = new ArrayList<>();
+		List<Integer> opcodes = new ArrayList<>();
+		int start = 0;
+		int opcode = 0;
+		for (int i = 0; i <= value.length(); i++) {
+			char c = i == value.length() ? 0 : value.charAt(i);
+			if (i != value.length() && c != '|' && c != '&' && c != '^') {
+				continue;
+			}
+			names.add(value.substring(start, i).trim());
+			opcodes.add(opcode);
+			opcode = c == '|' ? IOR : c == '&' ? IAND : IXOR;
+			start = i + 1;
+		}
+		if (names.size() > Byte.MAX_VALUE) {
+			throw new IllegalArgumentException("Too many fields in " + value);
+		}
+		out.writeByte(names.size());
+		for (int i = 0; i < names.size(); i++) {
+			out.writeUTF(names.get(i));
+			out.writeByte(opcodes.get(i));
+		}
+	}
+}
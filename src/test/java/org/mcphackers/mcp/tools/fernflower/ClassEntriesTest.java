@@ -0,0 +1,174 @@
+package org.mcphackers.mcp.tools.fernflower;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+
+public class ClassEntriesTest {
+	private static final String CLASS = "test/Example.class";
+	private static final List<String> NAMES = Collections.singletonList(CLASS);
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	public void servesContextClassesWithoutCode() throws IOException {
+		try (ClassEntries entries = new ClassEntries(writeSource())) {
+			File jar = entries.writeJar(tempDir.resolve("context.jar"), NAMES, true);
+			byte[] bytes = entries.getBytecode(jar.getAbsolutePath(), CLASS);
+			assertArrayEquals(readEntry(jar), bytes);
+			ClassNode node = readClass(bytes);
+			assertEquals(2, node.methods.size());
+			for (MethodNode method : node.methods) {
+				assertEquals(0, method.instructions.size(), method.name);
+			}
+		}
+	}
+
+	@Test
+	public void servesSegmentClassesWithCode() throws IOException {
+		try (ClassEntries entries = new ClassEntries(writeSource())) {
+			File jar = entries.writeJar(tempDir.resolve("segment.jar"), NAMES, false);
+			byte[] bytes = entries.getBytecode(jar.getAbsolutePath(), CLASS);
+			assertArrayEquals(readEntry(jar), bytes);
+			for (MethodNode method : readClass(bytes).methods) {
+				assertTrue(method.instructions.size() > 0, method.name);
+			}
+		}
+	}
+
+	@Test
+	public void collectsReferencedClassesWithSuperClasses() throws IOException {
+		Path source = tempDir.resolve("references.jar");
+		try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(source))) {
+			writeClass(out, "test/Requested", "java/lang/Object", "test/Referenced");
+			writeClass(out, "test/Referenced", "test/Parent", null);
+			writeClass(out, "test/Parent", "java/lang/Object", null);
+			writeClass(out, "test/Unrelated", "java/lang/Object", "test/Requested");
+		}
+		try (ClassEntries entries = new ClassEntries(source)) {
+			List<String> classes = entries.getReferencedClasses(Collections.singletonList("test/Requested.class"));
+			assertEquals(new HashSet<>(Arrays.asList("test/Referenced.class", "test/Parent.class")), new HashSet<>(classes));
+		}
+	}
+
+	@Test
+	public void contextDigestOnlyDependsOnDeclarations() throws IOException {
+		byte[] digest = getContextDigest("get", 1);
+		assertArrayEquals(digest, getContextDigest("get", 2));
+		assertFalse(Arrays.equals(digest, getContextDigest("other", 1)));
+	}
+
+	/**
+	 * @return context digest of a class referencing a class whose super class has a method returning <code>value</code>
+	 */
+	private byte[] getContextDigest(String method, int value) throws IOException {
+		Path source = Files.createTempFile(tempDir, "context", ".jar");
+		try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(source))) {
+			writeClass(out, "test/Requested", "java/lang/Object", "test/Referenced");
+			writeClass(out, "test/Referenced", "test/Parent", null);
+			ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
+			writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, "test/Parent", null, "java/lang/Object", null);
+			MethodVisitor get = writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, method, "()I", null, null);
+			get.visitCode();
+			get.visitIntInsn(Opcodes.BIPUSH, value);
+			get.visitInsn(Opcodes.IRETURN);
+			get.visitMaxs(0, 0);
+			get.visitEnd();
+			writer.visitEnd();
+			out.putNextEntry(new ZipEntry("test/Parent.class"));
+			out.write(writer.toByteArray());
+			out.closeEntry();
+		}
+		LibraryIndex index = LibraryIndex.load(Collections.emptyList(), null);
+		try (ClassEntries entries = new ClassEntries(source)) {
+			return entries.getContextDigest(Collections.singletonList("test/Requested.class"), index);
+		}
+	}
+
+	/**
+	 * @param referenced class instantiated by a method of the written class or <code>null</code>
+	 */
+	private static void writeClass(ZipOutputStream out, String name, String superName, String referenced) throws IOException {
+		ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
+		writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, name, null, superName, null);
+		if (referenced != null) {
+			MethodVisitor create = writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "create", "()Ljava/lang/Object;", null, null);
+			create.visitCode();
+			create.visitTypeInsn(Opcodes.NEW, referenced);
+			create.visitInsn(Opcodes.ARETURN);
+			create.visitMaxs(0, 0);
+			create.visitEnd();
+		}
+		writer.visitEnd();
+		out.putNextEntry(new ZipEntry(name + ".class"));
+		out.write(writer.toByteArray());
+		out.closeEntry();
+	}
+
+	private Path writeSource() throws IOException {
+		ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
+		writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, "test/Example", null, "java/lang/Object", null);
+		MethodVisitor init = writer.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+		init.visitCode();
+		init.visitVarInsn(Opcodes.ALOAD, 0);
+		init.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+		init.visitInsn(Opcodes.RETURN);
+		init.visitMaxs(0, 0);
+		init.visitEnd();
+		MethodVisitor get = writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "get", "()I", null, null);
+		get.visitCode();
+		get.visitIntInsn(Opcodes.BIPUSH, 42);
+		get.visitInsn(Opcodes.IRETURN);
+		get.visitMaxs(0, 0);
+		get.visitEnd();
+		writer.visitEnd();
+		Path source = tempDir.resolve("source.jar");
+		try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(source))) {
+			out.putNextEntry(new ZipEntry(CLASS));
+			out.write(writer.toByteArray());
+			out.closeEntry();
+		}
+		return source;
+	}
+
+	private static byte[] readEntry(File jar) throws IOException {
+		try (ZipFile zip = new ZipFile(jar); InputStream in = zip.getInputStream(zip.getEntry(CLASS))) {
+			byte[] bytes = new byte[(int) zip.getEntry(CLASS).getSize()];
+			int read = 0;
+			while (read < bytes.length) {
+				read += in.read(bytes, read, bytes.length - read);
+			}
+			return bytes;
+		}
+	}
+
+	private static ClassNode readClass(byte[] bytes) {
+		ClassNode node = new ClassNode();
+		new ClassReader(bytes).accept(node, 0);
+		return node;
+	}
+}